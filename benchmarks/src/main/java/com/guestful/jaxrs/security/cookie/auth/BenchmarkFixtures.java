@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.logging.Logger;
+
+/**
+ * Shared realm, keys and cookie values used by the benchmarks.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class BenchmarkFixtures {
+
+    static final String REALM = "bench";
+    static final String COOKIE_NAME = "gauth";
+    static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    static final String PRINCIPAL = "n0URmCU1_KkkygLn9-1wlQ";
+    static final int MAX_AGE = 30 * 24 * 60 * 60;
+    static final String MALFORMED = "this-is-not*a~token!";
+    // what a typical browser sends along with our cookie
+    static final String OTHER_COOKIES = "_ga=GA1.2.1402342374.1400000000; _gid=GA1.2.2037181744.1400000000; " +
+        "__utma=1.1402342374.1400000000.1400000000.1400000000.1; __utmz=1.1400000000.1.1.utmcsr=(direct); " +
+        "optimizelyEndUserId=oeu1400000000r0.5; locale=en_US";
+
+    private BenchmarkFixtures() {
+    }
+
+    static CookieAuthRealmConfig realmConfig() {
+        return new CookieAuthRealmConfig()
+            .setRealName(REALM)
+            .setCookieName(COOKIE_NAME)
+            .setCookiePath("/")
+            .setCookieDomain("localhost")
+            .setCookieMaxAge(MAX_AGE)
+            .setEncryptionKey(KEY);
+    }
+
+    static CookieAuth cookieAuth(String realm, boolean optional) {
+        return cookieAuth(realm, optional, false);
+    }
+
+    static CookieAuth cookieAuth(String realm, boolean optional, boolean lazy) {
+        return new CookieAuth() {
+            @Override
+            public String realm() {
+                return realm;
+            }
+
+            @Override
+            public boolean optional() {
+                return optional;
+            }
+
+            @Override
+            public boolean lazy() {
+                return lazy;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return CookieAuth.class;
+            }
+        };
+    }
+
+    /**
+     * Builds a token in the legacy 24 bytes format (8 bytes time + 16 bytes principal) with an arbitrary issue time.
+     */
+    static String token(String principal, long time) {
+        return token(KEY, principal, time);
+    }
+
+    static String token(String key, String principal, long time) {
+        ByteBuffer bb = ByteBuffer.allocate(24);
+        bb.putLong(time);
+        bb.put(Base64.getUrlDecoder().decode(principal));
+        XOR.newInstance(key).xor(bb.array());
+        return Base64.getUrlEncoder().encodeToString(bb.array()).replace("=", "");
+    }
+
+    static String validToken() {
+        return token(PRINCIPAL, System.currentTimeMillis());
+    }
+
+    static String expiredToken() {
+        return token(PRINCIPAL, System.currentTimeMillis() - (MAX_AGE + 60) * 1000L);
+    }
+
+    static String cookieHeader(String kind) {
+        switch (kind) {
+            case "valid":
+                return OTHER_COOKIES + "; " + COOKIE_NAME + "=" + validToken();
+            case "expired":
+                return OTHER_COOKIES + "; " + COOKIE_NAME + "=" + expiredToken();
+            case "malformed":
+                return OTHER_COOKIES + "; " + COOKIE_NAME + "=" + MALFORMED;
+            case "missing":
+                return OTHER_COOKIES;
+            default:
+                throw new IllegalArgumentException(kind);
+        }
+    }
+
+    /**
+     * Keeps log records from reaching the console: their creation is measured, not the console I/O.
+     */
+    static void muteLogs() {
+        Logger.getLogger(CookieAuthFeature.class.getName()).setUseParentHandlers(false);
+    }
+
+}
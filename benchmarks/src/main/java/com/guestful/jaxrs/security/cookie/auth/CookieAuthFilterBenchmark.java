@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.ws.rs.NotAuthorizedException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full request + response filter pair of {@link CookieAuthFeature.CookieAuthFilter}, as done by the container
+ * for each request on a {@link CookieAuth} resource.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CookieAuthFilterBenchmark {
+
+    @Param({"valid", "expired", "malformed", "missing"})
+    String cookie;
+
+    @Param({"false", "true"})
+    boolean optional;
+
+    // seconds, 0 to issue and render a new token on each response
+    @Param({"0", "60"})
+    int issueTimeBucket;
+
+    // 401 by abortWith() instead of an exception
+    @Param({"false", "true"})
+    boolean abortRejections;
+
+    private CookieAuthFeature.CookieAuthFilter filter;
+    private CookieAuthFeature.CookieAuthFilter lazyFilter;
+    private StubRequestContext request;
+    private StubResponseContext response;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.muteLogs();
+        CookieAuthFeature feature = new CookieAuthFeature();
+        feature.cookieAuthorizer = (principal, cookieAuth) -> true;
+        CookieAuthRealmConfig config = BenchmarkFixtures.realmConfig().setIssueTimeBucket(issueTimeBucket).setAbortRejections(abortRejections);
+        filter = feature.new CookieAuthFilter(config, BenchmarkFixtures.cookieAuth(BenchmarkFixtures.REALM, optional));
+        lazyFilter = feature.new CookieAuthFilter(config, BenchmarkFixtures.cookieAuth(BenchmarkFixtures.REALM, true, true));
+        request = new StubRequestContext(BenchmarkFixtures.cookieHeader(cookie));
+        response = new StubResponseContext();
+    }
+
+    @Benchmark
+    public Object requestAndResponse() throws IOException {
+        request.reset();
+        response.reset();
+        try {
+            filter.filter(request);
+        } catch (NotAuthorizedException e) {
+            return e;
+        }
+        if (request.getAbortResponse() != null) {
+            return request.getAbortResponse();
+        }
+        filter.filter(request, response);
+        return response.getHeaders();
+    }
+
+    /**
+     * Optional lazy access on a resource which never uses the subject
+     */
+    @Benchmark
+    public Object lazyUntouched() throws IOException {
+        request.reset();
+        response.reset();
+        lazyFilter.filter(request);
+        lazyFilter.filter(request, response);
+        return response.getHeaders();
+    }
+
+}
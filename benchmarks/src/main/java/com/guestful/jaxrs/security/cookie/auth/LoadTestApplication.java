@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+/**
+ * JAX-RS application served by the load test: one unprotected endpoint used as baseline, and endpoints protected
+ * by {@link CookieAuthFeature} on several realms, with login and logout.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class LoadTestApplication {
+
+    static final String[] REALMS = {"r1", "r2", "r3"};
+    static final String[] KEYS = {
+        "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90",
+        "1B2C3D4E5F60718293A4B5C6D7E8F908F1C2B7A4D3E9F60A",
+        "93A4B5C6D7E8F908F1C2B7A4D3E9F60A1B2C3D4E5F607182"
+    };
+
+    private LoadTestApplication() {
+    }
+
+    static CookieAuthRealmConfigs configs() {
+        CookieAuthRealmConfigs configs = new CookieAuthRealmConfigs();
+        for (int i = 0; i < REALMS.length; i++) {
+            configs.add(new CookieAuthRealmConfig()
+                .setRealName(REALMS[i])
+                .setCookieName(cookieName(REALMS[i]))
+                .setCookiePath("/")
+                .setCookieMaxAge(BenchmarkFixtures.MAX_AGE)
+                .setEncryptionKey(KEYS[i]));
+        }
+        return configs;
+    }
+
+    static String cookieName(String realm) {
+        return "auth-" + realm;
+    }
+
+    static ResourceConfig resourceConfig(CookieAuthRealmConfigs configs, CookieAuthorizer authorizer) {
+        return new ResourceConfig()
+            .register(new AbstractBinder() {
+                @Override
+                protected void configure() {
+                    bind(configs).to(CookieAuthRealmConfigs.class);
+                    bind(authorizer).to(CookieAuthorizer.class);
+                }
+            })
+            .register(CookieAuthFeature.class)
+            .register(Resources.class);
+    }
+
+    @Path("/")
+    public static class Resources {
+
+        @Inject Provider<CookieSubject> cookieSubject;
+
+        @GET
+        @Path("plain")
+        public String plain() {
+            return "ok";
+        }
+
+        @GET
+        @Path("r1")
+        @CookieAuth(realm = "r1")
+        public String r1() {
+            return cookieSubject.get().getPrincipal().getName();
+        }
+
+        @GET
+        @Path("r2")
+        @CookieAuth(realm = "r2")
+        public String r2() {
+            return cookieSubject.get().getPrincipal().getName();
+        }
+
+        @GET
+        @Path("r3")
+        @CookieAuth(realm = "r3", optional = true)
+        public String r3() {
+            CookieSubject subject = cookieSubject.get();
+            return subject.isAnonymous() ? "anonymous" : subject.getPrincipal().getName();
+        }
+
+        @POST
+        @Path("r1/login")
+        @CookieAuth(realm = "r1", optional = true)
+        public String login(@QueryParam("id") String id) {
+            cookieSubject.get().login(new NamedPrincipal(id));
+            return "ok";
+        }
+
+        @POST
+        @Path("r1/logout")
+        @CookieAuth(realm = "r1")
+        public String logout() {
+            cookieSubject.get().logout();
+            return "ok";
+        }
+
+    }
+
+}
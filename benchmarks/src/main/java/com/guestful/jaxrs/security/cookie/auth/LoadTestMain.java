@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import com.sun.net.httpserver.HttpServer;
+import org.glassfish.jersey.jdkhttp.JdkHttpServerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * End-to-end load test: boots the JDK HTTP server with Jersey and {@link CookieAuthFeature} on several realms,
+ * then drives concurrent HTTP traffic with a mix of valid, expired, missing and malformed cookies plus login / logout
+ * flows. The same mix is first sent to an unprotected endpoint, so that the overhead of the filter can be read from
+ * the difference between the two phases.
+ * <p>
+ * Options: -threads N (default 2 x cores), -warmup seconds (5), -duration seconds (20),
+ * -mix valid=60,expired=10,missing=10,malformed=10,flow=10
+ * <pre>
+ * java -cp target/benchmarks.jar com.guestful.jaxrs.security.cookie.auth.LoadTestMain -threads 32 -duration 60
+ * </pre>
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class LoadTestMain {
+
+    private static final String[] KINDS = {"valid", "expired", "missing", "malformed", "flow"};
+    private static final int PRINCIPALS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^-+", ""), args[i + 1]);
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "20"));
+        int[] mix = mix(options.getOrDefault("mix", "valid=60,expired=10,missing=10,malformed=10,flow=10"));
+
+        // keep alive connections for all the client threads
+        System.setProperty("http.maxConnections", String.valueOf(threads));
+        Logger.getLogger("org.glassfish").setLevel(Level.WARNING);
+        BenchmarkFixtures.muteLogs();
+
+        ExecutorService serverThreads = Executors.newFixedThreadPool(threads);
+        HttpServer server = JdkHttpServerFactory.createHttpServer(
+            URI.create("http://localhost:0/"),
+            LoadTestApplication.resourceConfig(LoadTestApplication.configs(), (principal, cookieAuth) -> true),
+            false);
+        server.setExecutor(serverThreads);
+        server.start();
+        String base = "http://localhost:" + server.getAddress().getPort() + "/";
+        Tokens tokens = new Tokens();
+
+        try {
+            System.out.println("threads=" + threads + " warmup=" + warmup + "s duration=" + duration + "s mix=" + options.getOrDefault("mix", "default"));
+            run(base, tokens, mix, threads, warmup, false);
+            print("without filter", run(base, tokens, mix, threads, duration, false), duration);
+            run(base, tokens, mix, threads, warmup, true);
+            print("with filter", run(base, tokens, mix, threads, duration, true), duration);
+        } finally {
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+    }
+
+    private static int[] mix(String value) {
+        int[] mix = new int[KINDS.length];
+        for (String entry : value.split(",")) {
+            String[] kv = entry.split("=");
+            int kind = Arrays.asList(KINDS).indexOf(kv[0].trim());
+            if (kind < 0) throw new IllegalArgumentException("Bad kind: " + kv[0]);
+            mix[kind] = Integer.parseInt(kv[1].trim());
+        }
+        // cumulative weights
+        for (int i = 1; i < mix.length; i++) {
+            mix[i] += mix[i - 1];
+        }
+        if (mix[mix.length - 1] <= 0) throw new IllegalArgumentException("Empty mix: " + value);
+        return mix;
+    }
+
+    private static Latencies[] run(String base, Tokens tokens, int[] mix, int threads, int seconds, boolean filtered) throws Exception {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        List<Future<Latencies[]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(clients.submit(() -> {
+                Latencies[] latencies = newLatencies();
+                Random random = new Random();
+                while (System.nanoTime() < end) {
+                    int draw = random.nextInt(mix[mix.length - 1]);
+                    int kind = 0;
+                    while (draw >= mix[kind]) kind++;
+                    int realm = random.nextInt(LoadTestApplication.REALMS.length);
+                    String id = tokens.ids[random.nextInt(PRINCIPALS)];
+                    switch (KINDS[kind]) {
+                        case "valid":
+                            get(latencies[kind], base, filtered, realm, tokens.valid(realm, id));
+                            break;
+                        case "expired":
+                            get(latencies[kind], base, filtered, realm, tokens.expired(realm, id));
+                            break;
+                        case "missing":
+                            get(latencies[kind], base, filtered, realm, null);
+                            break;
+                        case "malformed":
+                            get(latencies[kind], base, filtered, realm, BenchmarkFixtures.MALFORMED);
+                            break;
+                        default:
+                            flow(latencies[kind], base, filtered, id);
+                    }
+                }
+                return latencies;
+            }));
+        }
+        Latencies[] total = newLatencies();
+        for (Future<Latencies[]> future : futures) {
+            Latencies[] latencies = future.get();
+            for (int i = 0; i < total.length; i++) {
+                total[i].addAll(latencies[i]);
+            }
+        }
+        clients.shutdown();
+        return total;
+    }
+
+    private static void get(Latencies latencies, String base, boolean filtered, int realm, String token) throws IOException {
+        String path = filtered ? LoadTestApplication.REALMS[realm] : "plain";
+        String cookie = token == null ? BenchmarkFixtures.OTHER_COOKIES : BenchmarkFixtures.OTHER_COOKIES + "; " + LoadTestApplication.cookieName(LoadTestApplication.REALMS[realm]) + "=" + token;
+        send(latencies, "GET", base + path, cookie);
+    }
+
+    private static void flow(Latencies latencies, String base, boolean filtered, String id) throws IOException {
+        String cookieName = LoadTestApplication.cookieName(LoadTestApplication.REALMS[0]);
+        HttpURLConnection login = send(latencies, "POST", base + (filtered ? "r1/login?id=" + id : "plain"), BenchmarkFixtures.OTHER_COOKIES);
+        String cookie = BenchmarkFixtures.OTHER_COOKIES;
+        List<String> setCookies = login.getHeaderFields().get("Set-Cookie");
+        if (setCookies != null) {
+            for (String setCookie : setCookies) {
+                if (setCookie.startsWith(cookieName + "=")) {
+                    cookie += "; " + setCookie.substring(0, setCookie.indexOf(';'));
+                }
+            }
+        }
+        send(latencies, "GET", base + (filtered ? "r1" : "plain"), cookie);
+        send(latencies, "POST", base + (filtered ? "r1/logout" : "plain"), cookie);
+    }
+
+    private static HttpURLConnection send(Latencies latencies, String method, String url, String cookie) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Cookie", cookie);
+        if (method.equals("POST")) {
+            connection.setFixedLengthStreamingMode(0);
+            connection.setDoOutput(true);
+            connection.getOutputStream().close();
+        }
+        int status = connection.getResponseCode();
+        // read the whole body so that the connection is kept alive
+        try (InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (is != null) {
+                byte[] buffer = new byte[512];
+                while (is.read(buffer) != -1) ;
+            }
+        }
+        latencies.add(System.nanoTime() - start, status);
+        return connection;
+    }
+
+    private static Latencies[] newLatencies() {
+        Latencies[] latencies = new Latencies[KINDS.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Latencies();
+        }
+        return latencies;
+    }
+
+    private static void print(String phase, Latencies[] latencies, int seconds) {
+        Latencies all = new Latencies();
+        for (Latencies l : latencies) {
+            all.addAll(l);
+        }
+        System.out.println();
+        System.out.println(phase);
+        System.out.println(String.format("%-10s %10s %10s %10s %10s %10s %10s %8s %8s %8s", "kind", "requests", "req/s", "p50 us", "p99 us", "p999 us", "max us", "2xx", "401", "other"));
+        for (int i = 0; i < KINDS.length; i++) {
+            print(KINDS[i], latencies[i], seconds);
+        }
+        print("all", all, seconds);
+    }
+
+    private static void print(String kind, Latencies latencies, int seconds) {
+        if (latencies.size == 0) return;
+        long[] sorted = Arrays.copyOf(latencies.nanos, latencies.size);
+        Arrays.sort(sorted);
+        System.out.println(String.format("%-10s %10d %10d %10d %10d %10d %10d %8d %8d %8d",
+            kind, sorted.length, sorted.length / seconds,
+            percentile(sorted, 0.5) / 1000, percentile(sorted, 0.99) / 1000, percentile(sorted, 0.999) / 1000, sorted[sorted.length - 1] / 1000,
+            latencies.ok, latencies.unauthorized, latencies.other));
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        return sorted[Math.max(0, (int) Math.ceil(q * sorted.length) - 1)];
+    }
+
+    /**
+     * Latencies of one kind of request, recorded by one client thread
+     */
+    private static final class Latencies {
+        long[] nanos = new long[1024];
+        int size;
+        long ok;
+        long unauthorized;
+        long other;
+
+        void add(long latency, int status) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+            if (status / 100 == 2) ok++;
+            else if (status == 401) unauthorized++;
+            else other++;
+        }
+
+        void addAll(Latencies latencies) {
+            if (size + latencies.size > nanos.length) {
+                nanos = Arrays.copyOf(nanos, Math.max(size + latencies.size, nanos.length * 2));
+            }
+            System.arraycopy(latencies.nanos, 0, nanos, size, latencies.size);
+            size += latencies.size;
+            ok += latencies.ok;
+            unauthorized += latencies.unauthorized;
+            other += latencies.other;
+        }
+    }
+
+    /**
+     * Valid and expired tokens of a pool of principals, for each realm
+     */
+    private static final class Tokens {
+        final String[] ids = new String[PRINCIPALS];
+        final String[][] valid = new String[LoadTestApplication.REALMS.length][PRINCIPALS];
+        final String[][] expired = new String[LoadTestApplication.REALMS.length][PRINCIPALS];
+        final Map<String, Integer> index = new HashMap<>();
+
+        Tokens() {
+            Random random = new Random(0);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < PRINCIPALS; i++) {
+                byte[] id = new byte[16];
+                random.nextBytes(id);
+                ids[i] = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+                index.put(ids[i], i);
+                for (int r = 0; r < LoadTestApplication.REALMS.length; r++) {
+                    valid[r][i] = BenchmarkFixtures.token(LoadTestApplication.KEYS[r], ids[i], now);
+                    expired[r][i] = BenchmarkFixtures.token(LoadTestApplication.KEYS[r], ids[i], now - (BenchmarkFixtures.MAX_AGE + 60) * 1000L);
+                }
+            }
+        }
+
+        String valid(int realm, String id) {
+            return valid[realm][index.get(id)];
+        }
+
+        String expired(int realm, String id) {
+            return expired[realm][index.get(id)];
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token encryption and decryption done by {@link CookieAuthFeature.StoredPrincipal}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoredPrincipalBenchmark {
+
+    private Keyring keyring;
+    private CookieAuthFeature.StoredPrincipal storedPrincipal;
+    private String valid;
+    private String expired;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.muteLogs();
+        keyring = CookieAuthRealm.compile(BenchmarkFixtures.realmConfig(), null).getKeyring();
+        storedPrincipal = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(BenchmarkFixtures.PRINCIPAL));
+        valid = BenchmarkFixtures.validToken();
+        expired = BenchmarkFixtures.expiredToken();
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return storedPrincipal.encrypt(keyring);
+    }
+
+    @Benchmark
+    public Object decryptValid() {
+        return CookieAuthFeature.StoredPrincipal.decrypt(keyring, valid);
+    }
+
+    @Benchmark
+    public boolean decryptExpired() {
+        return CookieAuthFeature.StoredPrincipal.decrypt(keyring, expired).expired(BenchmarkFixtures.MAX_AGE);
+    }
+
+    @Benchmark
+    public Object decryptMalformed() {
+        return CookieAuthFeature.StoredPrincipal.decrypt(keyring, BenchmarkFixtures.MALFORMED);
+    }
+
+}
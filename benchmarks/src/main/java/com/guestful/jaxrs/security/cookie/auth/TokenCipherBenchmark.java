@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per request of the authenticated token ciphers compared with the original XOR format, for both token formats.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenCipherBenchmark {
+
+    @Param({"xor", "aes-gcm", "hmac-sha256"})
+    public String cipher;
+
+    @Param({"LEGACY", "V1"})
+    public TokenFormat format;
+
+    private Keyring keyring;
+    private CookieAuthFeature.StoredPrincipal storedPrincipal;
+    private String valid;
+    private String tampered;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.muteLogs();
+        keyring = CookieAuthRealm.compile(BenchmarkFixtures.realmConfig().setTokenCipher(TokenCipher.named(cipher)), null).getKeyring();
+        storedPrincipal = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(BenchmarkFixtures.PRINCIPAL), TokenClaims.NONE.withRole(1).withTenant(42));
+        valid = storedPrincipal.encrypt(keyring, format);
+        // flip a bit in the middle of the token
+        char[] chars = valid.toCharArray();
+        chars[chars.length / 2] = chars[chars.length / 2] == 'A' ? 'B' : 'A';
+        tampered = new String(chars);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return storedPrincipal.encrypt(keyring, format);
+    }
+
+    @Benchmark
+    public Object decryptValid() {
+        return CookieAuthFeature.StoredPrincipal.decrypt(keyring, valid);
+    }
+
+    @Benchmark
+    public Object decryptTampered() {
+        return CookieAuthFeature.StoredPrincipal.decrypt(keyring, tampered);
+    }
+
+}
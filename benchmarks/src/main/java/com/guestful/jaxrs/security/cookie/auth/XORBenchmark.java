@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XORBenchmark {
+
+    private XOR xor;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        xor = XOR.newInstance(BenchmarkFixtures.KEY);
+        data = new byte[24];
+    }
+
+    @Benchmark
+    public byte[] xor() {
+        xor.xor(data);
+        return data;
+    }
+
+    @Benchmark
+    public byte[] newInstanceAndXor() {
+        XOR.newInstance(BenchmarkFixtures.KEY).xor(data);
+        return data;
+    }
+
+}
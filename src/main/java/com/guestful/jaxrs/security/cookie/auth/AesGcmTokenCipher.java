@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * AES-GCM token cipher: nonce (12 bytes) + ciphertext + tag (16 bytes).
+ * <p>
+ * Cipher instances are looked up once per thread and only re-initialized with the prepared key for each token,
+ * so the JDK AES-NI / CLMUL intrinsics are used without provider lookups on the request path.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class AesGcmTokenCipher implements TokenCipher {
+
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private final SecretKey key;
+
+    AesGcmTokenCipher(byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes long");
+        }
+        this.key = new SecretKeySpec(key, "AES");
+        // fail fast if the key is refused by the provider
+        seal(new byte[CookieAuthFeature.StoredPrincipal.TOKEN_LENGTH], CookieAuthFeature.StoredPrincipal.TOKEN_LENGTH, new byte[TokenCodec.MAX_TOKEN_LENGTH]);
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return true;
+    }
+
+    @Override
+    public int seal(byte[] plain, int len, byte[] out) {
+        State state = STATE.get();
+        state.random.nextBytes(state.nonce);
+        System.arraycopy(state.nonce, 0, out, 0, NONCE_LENGTH);
+        try {
+            state.cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, state.nonce));
+            return NONCE_LENGTH + state.cipher.doFinal(plain, 0, len, out, NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to encrypt token: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int open(byte[] sealed, int len, byte[] plain) {
+        if (len < NONCE_LENGTH + TAG_LENGTH) {
+            return -1;
+        }
+        Cipher cipher = STATE.get().cipher;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, sealed, 0, NONCE_LENGTH));
+            return cipher.doFinal(sealed, NONCE_LENGTH, len - NONCE_LENGTH, plain, 0);
+        } catch (GeneralSecurityException e) {
+            // AEADBadTagException: wrong key or tampered token
+            return -1;
+        }
+    }
+
+    private static final class State {
+        final Cipher cipher;
+        final SecureRandom random = new SecureRandom();
+        final byte[] nonce = new byte[NONCE_LENGTH];
+
+        State() {
+            try {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES/GCM not available: " + e.getMessage(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous sibling of {@link CookieAuthorizer}, used through a {@link CoalescingCookieAuthorizer}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface AsyncCookieAuthorizer {
+
+    CompletionStage<Boolean> isAuthorized(Principal principal, CookieAuth cookieAuth);
+
+    /**
+     * Called with the claims read from the token. Delegates to {@link #isAuthorized(Principal, CookieAuth)} by default.
+     */
+    default CompletionStage<Boolean> isAuthorized(Principal principal, TokenClaims claims, CookieAuth cookieAuth) {
+        return isAuthorized(principal, cookieAuth);
+    }
+
+    /**
+     * Bulk lookup of several principals for the same {@link CookieAuth}. Principals missing in the returned map are not authorized.
+     * Override it when the backing store supports bulk queries: by default, each principal is looked up separately,
+     * and a failed lookup only denies its own principal.
+     */
+    default CompletionStage<Map<Principal, Boolean>> isAuthorized(Collection<Principal> principals, CookieAuth cookieAuth) {
+        return BulkLookup.each(principals, principal -> isAuthorized(principal, cookieAuth));
+    }
+
+    /**
+     * Bulk lookup of several principals presenting the same claims. By default, each principal is looked up separately
+     * with {@link #isAuthorized(Principal, TokenClaims, CookieAuth)}, and a failed lookup only denies its own principal.
+     */
+    default CompletionStage<Map<Principal, Boolean>> isAuthorized(Collection<Principal> principals, TokenClaims claims, CookieAuth cookieAuth) {
+        return BulkLookup.each(principals, principal -> isAuthorized(principal, claims, cookieAuth));
+    }
+
+}
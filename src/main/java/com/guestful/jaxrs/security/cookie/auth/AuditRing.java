@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring of events with many producers and one consumer. The slots are preallocated: a producer claims
+ * one with a CAS on the tail, writes its fields and publishes it through the sequence of the slot, without allocating.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class AuditRing {
+
+    private final int capacity;
+    private final int mask;
+    // position + 1 when the slot is published, position + capacity when it is free again
+    private final AtomicLongArray sequences;
+    private final CookieAuthEvent.Type[] types;
+    private final String[] realms;
+    private final String[] principals;
+    private final long[] times;
+    private final AtomicLong tail = new AtomicLong();
+    // read by the consumer only
+    private long head;
+
+    AuditRing(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) throw new IllegalArgumentException("Bad capacity: " + capacity);
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.types = new CookieAuthEvent.Type[this.capacity];
+        this.realms = new String[this.capacity];
+        this.principals = new String[this.capacity];
+        this.times = new long[this.capacity];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return false if the ring is full
+     */
+    boolean offer(CookieAuthEvent.Type type, String realm, String principal, long time) {
+        long pos = tail.get();
+        for (; ; ) {
+            int i = (int) pos & mask;
+            long diff = sequences.get(i) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    types[i] = type;
+                    realms[i] = realm;
+                    principals[i] = principal;
+                    times[i] = time;
+                    sequences.lazySet(i, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // the slot of the previous lap is not consumed yet
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Consumer side: moves up to max published events to the batch
+     *
+     * @return the number of events moved
+     */
+    int drain(List<CookieAuthEvent> batch, int max) {
+        int n = 0;
+        while (n < max) {
+            int i = (int) head & mask;
+            if (sequences.get(i) != head + 1) {
+                break;
+            }
+            batch.add(new CookieAuthEvent(types[i], realms[i], principals[i], times[i]));
+            principals[i] = null;
+            sequences.lazySet(i, head + capacity);
+            head++;
+            n++;
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+
+/**
+ * Identifies an authorization decision: a principal with the claims of its token (null when not given) on a realm, optional or not.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class AuthorizationKey {
+
+    final Principal principal;
+    final TokenClaims claims;
+    final String realm;
+    final boolean optional;
+    private final int hash;
+
+    AuthorizationKey(Principal principal, TokenClaims claims, CookieAuth cookieAuth) {
+        this(principal, claims, cookieAuth.realm(), cookieAuth.optional());
+    }
+
+    AuthorizationKey(Principal principal, TokenClaims claims, String realm, boolean optional) {
+        this.principal = principal;
+        this.claims = claims;
+        this.realm = realm;
+        this.optional = optional;
+        int h = principal == null ? 0 : principal.hashCode();
+        h = 31 * h + (claims == null ? 0 : claims.hashCode());
+        h = 31 * h + realm.hashCode();
+        this.hash = 31 * h + (optional ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AuthorizationKey that = (AuthorizationKey) o;
+        return optional == that.optional
+            && (principal == null ? that.principal == null : principal.equals(that.principal))
+            && (claims == null ? that.claims == null : claims.equals(that.claims))
+            && realm.equals(that.realm);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return principal + (claims == null ? "" : claims.toString()) + "@" + realm + (optional ? " (optional)" : "");
+    }
+
+}
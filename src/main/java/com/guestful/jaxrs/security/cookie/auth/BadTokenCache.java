@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded set of recently seen bad token values, so that a client repeating the same bad cookie is rejected by
+ * a hash lookup instead of decoding and decrypting it again.
+ * <p>
+ * Direct-mapped and lock-free: each slot keeps the 64 bits hash of the last bad value mapped to it.
+ * The hash is seeded per instance so that collisions with valid tokens cannot be computed in advance.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class BadTokenCache {
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final long seed = new SecureRandom().nextLong() | 1;
+
+    /**
+     * @param size rounded up to a power of 2
+     */
+    BadTokenCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    boolean contains(CharSequence token) {
+        long hash = hash(token);
+        return slots.get(index(hash)) == hash;
+    }
+
+    void add(CharSequence token) {
+        long hash = hash(token);
+        slots.lazySet(index(hash), hash);
+    }
+
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private long hash(CharSequence token) {
+        long h = seed;
+        for (int i = 0; i < token.length(); i++) {
+            h = (h ^ token.charAt(i)) * PRIME;
+        }
+        h ^= h >>> 29;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 32;
+        // 0 marks an empty slot
+        return h == 0 ? 1 : h;
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Default bulk lookups of {@link AsyncCookieAuthorizer}: one lookup per principal.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class BulkLookup {
+
+    private BulkLookup() {
+    }
+
+    /**
+     * @return the decision of each principal, false when its lookup failed
+     */
+    static CompletionStage<Map<Principal, Boolean>> each(Collection<Principal> principals, Function<Principal, CompletionStage<Boolean>> lookup) {
+        Map<Principal, Boolean> decisions = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] lookups = new CompletableFuture<?>[principals.size()];
+        int i = 0;
+        for (Principal principal : principals) {
+            CompletionStage<Boolean> decision;
+            try {
+                decision = lookup.apply(principal);
+            } catch (RuntimeException e) {
+                CompletableFuture<Boolean> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                decision = failed;
+            }
+            lookups[i++] = decision
+                .handle((authorized, e) -> decisions.put(principal, e == null && Boolean.TRUE.equals(authorized)))
+                .toCompletableFuture();
+        }
+        return CompletableFuture.allOf(lookups).thenApply(v -> decisions);
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link CookieAuthorizer} remembering the decisions of another one for some time.
+ * <p>
+ * Decisions are cached per principal, token claims, realm and optional flag: a principal presenting other claims is looked up again. When the cache is full, expired decisions are
+ * removed first, then some others. Use {@link #invalidate(Principal)} when the permissions of a user change.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CachingCookieAuthorizer implements CookieAuthorizer {
+
+    private final CookieAuthorizer delegate;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ConcurrentMap<AuthorizationKey, Decision> decisions = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // bumped on invalidation so that decisions loaded meanwhile are not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    public CachingCookieAuthorizer(CookieAuthorizer delegate, int maxSize, long ttl, TimeUnit unit) {
+        if (delegate == null) throw new NullPointerException();
+        if (maxSize <= 0) throw new IllegalArgumentException("Bad max size: " + maxSize);
+        if (ttl <= 0) throw new IllegalArgumentException("Bad TTL: " + ttl);
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    @Override
+    public boolean isAuthorized(Principal principal, CookieAuth cookieAuth) {
+        return isAuthorized(new AuthorizationKey(principal, null, cookieAuth), cookieAuth);
+    }
+
+    @Override
+    public boolean isAuthorized(Principal principal, TokenClaims claims, CookieAuth cookieAuth) {
+        return isAuthorized(new AuthorizationKey(principal, claims, cookieAuth), cookieAuth);
+    }
+
+    private boolean isAuthorized(AuthorizationKey key, CookieAuth cookieAuth) {
+        long now = System.nanoTime();
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.expires - now > 0) {
+            hits.increment();
+            return decision.authorized;
+        }
+        misses.increment();
+        long gen = generation.get();
+        boolean authorized = key.claims == null ?
+            delegate.isAuthorized(key.principal, cookieAuth) :
+            delegate.isAuthorized(key.principal, key.claims, cookieAuth);
+        if (decision == null && decisions.size() >= maxSize) {
+            evict(now);
+        }
+        if (gen == generation.get()) {
+            decisions.put(key, new Decision(authorized, now + ttlNanos));
+        }
+        return authorized;
+    }
+
+    public void invalidate(Principal principal) {
+        generation.incrementAndGet();
+        decisions.keySet().removeIf(key -> key.principal.equals(principal));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        decisions.clear();
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private void evict(long now) {
+        // make room for about 10% of the max size so that we do not evict on each insert
+        int target = maxSize - Math.max(1, maxSize / 10);
+        for (Iterator<Decision> it = decisions.values().iterator(); it.hasNext(); ) {
+            if (it.next().expires - now <= 0) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+        for (Iterator<Decision> it = decisions.values().iterator(); it.hasNext() && decisions.size() > target; ) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private static final class Decision {
+        final boolean authorized;
+        final long expires;
+
+        Decision(boolean authorized, long expires) {
+            this.authorized = authorized;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link CookieAuthorizer} backed by an {@link AsyncCookieAuthorizer}, to bind in place of a blocking authorizer.
+ * <ul>
+ * <li>Concurrent lookups of the same principal, claims, realm and optional flag share a single call to the delegate (single-flight)</li>
+ * <li>When a batch window is set, lookups of different principals with the same claims, realm and optional flag arriving within
+ * this window are sent together as one bulk call</li>
+ * </ul>
+ * A lookup failing or not answered within the timeout denies the access.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CoalescingCookieAuthorizer implements CookieAuthorizer, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CoalescingCookieAuthorizer.class.getName());
+
+    private final AsyncCookieAuthorizer delegate;
+    private final long timeoutNanos;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final ConcurrentMap<AuthorizationKey, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<AuthorizationKey, Batch> batches = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder bulkCalls = new LongAdder();
+
+    /**
+     * Single-flight only, without batching
+     */
+    public CoalescingCookieAuthorizer(AsyncCookieAuthorizer delegate, long timeout, TimeUnit unit) {
+        this(delegate, timeout, 0, 1, unit, null);
+    }
+
+    public CoalescingCookieAuthorizer(AsyncCookieAuthorizer delegate, long timeout, long batchWindow, int maxBatchSize, TimeUnit unit) {
+        this(delegate, timeout, batchWindow, maxBatchSize, unit, null);
+    }
+
+    /**
+     * @param scheduler used to flush the batches at the end of their window. If null, one is created and shut down by {@link #close()}.
+     */
+    public CoalescingCookieAuthorizer(AsyncCookieAuthorizer delegate, long timeout, long batchWindow, int maxBatchSize, TimeUnit unit, ScheduledExecutorService scheduler) {
+        if (delegate == null) throw new NullPointerException();
+        if (timeout <= 0) throw new IllegalArgumentException("Bad timeout: " + timeout);
+        if (batchWindow < 0) throw new IllegalArgumentException("Bad batch window: " + batchWindow);
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("Bad max batch size: " + maxBatchSize);
+        this.delegate = delegate;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.windowNanos = unit.toNanos(batchWindow);
+        this.maxBatchSize = maxBatchSize;
+        this.ownScheduler = scheduler == null && batchWindow > 0;
+        this.scheduler = ownScheduler ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cookie-auth-batch");
+            thread.setDaemon(true);
+            return thread;
+        }) : scheduler;
+    }
+
+    @Override
+    public boolean isAuthorized(Principal principal, CookieAuth cookieAuth) {
+        return isAuthorized(new AuthorizationKey(principal, null, cookieAuth), cookieAuth);
+    }
+
+    @Override
+    public boolean isAuthorized(Principal principal, TokenClaims claims, CookieAuth cookieAuth) {
+        return isAuthorized(new AuthorizationKey(principal, claims, cookieAuth), cookieAuth);
+    }
+
+    private boolean isAuthorized(AuthorizationKey key, CookieAuth cookieAuth) {
+        CompletableFuture<Boolean> future = inFlight.get(key);
+        if (future == null) {
+            CompletableFuture<Boolean> created = new CompletableFuture<>();
+            future = inFlight.putIfAbsent(key, created);
+            if (future == null) {
+                future = created;
+                created.whenComplete((authorized, e) -> inFlight.remove(key, created));
+                load(key, cookieAuth, created);
+            } else {
+                coalesced.increment();
+            }
+        } else {
+            coalesced.increment();
+        }
+        try {
+            return Boolean.TRUE.equals(future.get(timeoutNanos, TimeUnit.NANOSECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            // releases the callers waiting on the same lookup, and removes it: next requests will try again
+            future.completeExceptionally(e);
+            inFlight.remove(key, future);
+            LOGGER.log(Level.WARNING, "Authorization lookup timed out for " + key);
+            return false;
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Authorization lookup failed for " + key, e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * @return number of lookups sent to the delegate
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return number of lookups which joined a lookup already in flight
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of bulk calls made to the delegate
+     */
+    public long getBulkCallCount() {
+        return bulkCalls.sum();
+    }
+
+    @Override
+    public void close() {
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void load(AuthorizationKey key, CookieAuth cookieAuth, CompletableFuture<Boolean> future) {
+        loads.increment();
+        if (windowNanos == 0) {
+            try {
+                CompletionStage<Boolean> lookup = key.claims == null ?
+                    delegate.isAuthorized(key.principal, cookieAuth) :
+                    delegate.isAuthorized(key.principal, key.claims, cookieAuth);
+                lookup.whenComplete((authorized, e) -> {
+                    if (e != null) future.completeExceptionally(e);
+                    else future.complete(authorized);
+                });
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+        AuthorizationKey batchKey = new AuthorizationKey(null, key.claims, key.realm, key.optional);
+        while (true) {
+            Batch batch = batches.get(batchKey);
+            if (batch == null) {
+                Batch created = new Batch(key.claims, cookieAuth);
+                batch = batches.putIfAbsent(batchKey, created);
+                if (batch == null) {
+                    batch = created;
+                    Batch scheduled = created;
+                    scheduler.schedule(() -> flush(batchKey, scheduled), windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            int size = batch.add(key.principal, future);
+            if (size >= maxBatchSize) {
+                flush(batchKey, batch);
+            }
+            if (size > 0) {
+                return;
+            }
+            // batch flushed meanwhile: use a new one
+            batches.remove(batchKey, batch);
+        }
+    }
+
+    private void flush(AuthorizationKey batchKey, Batch batch) {
+        batches.remove(batchKey, batch);
+        Map<Principal, CompletableFuture<Boolean>> pending = batch.close();
+        if (pending.isEmpty()) {
+            return;
+        }
+        bulkCalls.increment();
+        try {
+            CompletionStage<Map<Principal, Boolean>> lookup = batch.claims == null ?
+                delegate.isAuthorized(new ArrayList<>(pending.keySet()), batch.cookieAuth) :
+                delegate.isAuthorized(new ArrayList<>(pending.keySet()), batch.claims, batch.cookieAuth);
+            lookup.whenComplete((decisions, e) -> {
+                for (Map.Entry<Principal, CompletableFuture<Boolean>> entry : pending.entrySet()) {
+                    if (e != null) entry.getValue().completeExceptionally(e);
+                    else entry.getValue().complete(decisions != null && Boolean.TRUE.equals(decisions.get(entry.getKey())));
+                }
+            });
+        } catch (RuntimeException e) {
+            for (CompletableFuture<Boolean> future : pending.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Batch {
+
+        final TokenClaims claims;
+        final CookieAuth cookieAuth;
+        private Map<Principal, CompletableFuture<Boolean>> pending = new LinkedHashMap<>();
+
+        Batch(TokenClaims claims, CookieAuth cookieAuth) {
+            this.claims = claims;
+            this.cookieAuth = cookieAuth;
+        }
+
+        /**
+         * @return the batch size, or 0 if the batch is already flushed
+         */
+        synchronized int add(Principal principal, CompletableFuture<Boolean> future) {
+            if (pending == null) return 0;
+            pending.put(principal, future);
+            return pending.size();
+        }
+
+        synchronized Map<Principal, CompletableFuture<Boolean>> close() {
+            Map<Principal, CompletableFuture<Boolean>> flushed = pending == null ? Collections.emptyMap() : pending;
+            pending = null;
+            return flushed;
+        }
+    }
+
+}
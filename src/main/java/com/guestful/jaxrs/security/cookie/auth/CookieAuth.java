@@ -24,7 +24,20 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface CookieAuth {
+
+    /**
+     * Realm name selecting the realm of each request from its Host header, among the realms declaring hosts
+     * (see {@link CookieAuthRealmConfig#addHost(String)})
+     */
+    String BY_HOST = "<host>";
+
     String realm();
 
     boolean optional() default false;
+
+    /**
+     * For optional access only: the cookie is only read and authorized when the resource first uses the {@link CookieSubject},
+     * and is left untouched if the resource does not use it.
+     */
+    boolean lazy() default false;
 }
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Audit trail of the authentication events. Request threads only copy the event in a bounded ring
+ * and a background thread writes the events in batches to the sinks:
+ * <pre>
+ * CookieAuthAudit audit = CookieAuthAudit.start(8192, CookieAuthAudit.Overflow.DROP, CookieAuthEventSink.file(path));
+ * configs.addAuthListener(audit);
+ * </pre>
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CookieAuthAudit implements CookieAuthListener, AutoCloseable {
+
+    /**
+     * What request threads do when the ring is full
+     */
+    public enum Overflow {
+        /**
+         * Drop the event and count it
+         */
+        DROP,
+        /**
+         * Wait for the background thread to free a slot
+         */
+        BLOCK
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(CookieAuthAudit.class.getName());
+    private static final int BATCH_SIZE = 512;
+    // the idle consumer parks longer and longer, up to the max, until events come again
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final AuditRing ring;
+    private final Overflow overflow;
+    private final List<CookieAuthEventSink> sinks;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final Thread consumer;
+    private volatile boolean closed;
+    // publishers between their check of closed and the end of their offer
+    private final AtomicInteger publishing = new AtomicInteger();
+
+    private CookieAuthAudit(int capacity, Overflow overflow, List<CookieAuthEventSink> sinks) {
+        if (overflow == null) throw new NullPointerException();
+        this.ring = new AuditRing(capacity);
+        this.overflow = overflow;
+        this.sinks = sinks;
+        this.consumer = new Thread(this::consume, "cookie-auth-audit");
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * @param capacity number of events waiting to be written, rounded up to a power of 2
+     */
+    public static CookieAuthAudit start(int capacity, Overflow overflow, CookieAuthEventSink... sinks) {
+        CookieAuthAudit audit = new CookieAuthAudit(capacity, overflow, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(sinks))));
+        audit.consumer.start();
+        return audit;
+    }
+
+    /**
+     * @return the number of events dropped because the ring was full, or the audit closed
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public int getCapacity() {
+        return ring.capacity();
+    }
+
+    @Override
+    public void onLogin(String realm, Principal principal) {
+        publish(CookieAuthEvent.Type.LOGIN, realm, principal);
+    }
+
+    @Override
+    public void onLogout(String realm, Principal principal) {
+        publish(CookieAuthEvent.Type.LOGOUT, realm, principal);
+    }
+
+    @Override
+    public void onExpiredToken(String realm, Principal principal) {
+        publish(CookieAuthEvent.Type.EXPIRED_TOKEN, realm, principal);
+    }
+
+    @Override
+    public void onDenied(String realm, Principal principal) {
+        publish(CookieAuthEvent.Type.DENIED, realm, principal);
+    }
+
+    @Override
+    public void onDecryptFailure(String realm) {
+        publish(CookieAuthEvent.Type.DECRYPT_FAILURE, realm, null);
+    }
+
+    /**
+     * Writes the pending events, closes the sinks and drops the events published afterwards
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        LockSupport.unpark(consumer);
+        consumer.join();
+    }
+
+    private void publish(CookieAuthEvent.Type type, String realm, Principal principal) {
+        String name = principal == null ? null : principal.getName();
+        long time = System.currentTimeMillis();
+        publishing.incrementAndGet();
+        try {
+            while (closed || !ring.offer(type, realm, name, time)) {
+                if (closed || overflow == Overflow.DROP) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.parkNanos(FULL_NANOS);
+            }
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    private void consume() {
+        List<CookieAuthEvent> batch = new ArrayList<>(BATCH_SIZE);
+        List<CookieAuthEvent> readOnly = Collections.unmodifiableList(batch);
+        long idle = MIN_IDLE_NANOS;
+        for (; ; ) {
+            // read before draining: once closed and without publisher in flight, every event accepted is in the ring,
+            // and later ones are dropped
+            boolean stop = closed && publishing.get() == 0;
+            if (ring.drain(batch, BATCH_SIZE) == 0) {
+                if (stop) {
+                    break;
+                }
+                // producers never wake us up: it would cost them a system call
+                LockSupport.parkNanos(idle);
+                idle = closed ? MIN_IDLE_NANOS : Math.min(idle * 2, MAX_IDLE_NANOS);
+                continue;
+            }
+            idle = MIN_IDLE_NANOS;
+            for (CookieAuthEventSink sink : sinks) {
+                try {
+                    sink.write(readOnly);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unable to write " + batch.size() + " audit events to " + sink + ": " + e.getMessage(), e);
+                }
+            }
+            written.add(batch.size());
+            batch.clear();
+        }
+        for (CookieAuthEventSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Unable to close audit sink " + sink + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.time.Instant;
+
+/**
+ * Authentication event written by {@link CookieAuthAudit} to its sinks
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CookieAuthEvent {
+
+    public enum Type {
+        LOGIN, LOGOUT, EXPIRED_TOKEN, DENIED, DECRYPT_FAILURE
+    }
+
+    private final Type type;
+    private final String realm;
+    private final String principal;
+    private final long time;
+
+    CookieAuthEvent(Type type, String realm, String principal, long time) {
+        this.type = type;
+        this.realm = realm;
+        this.principal = principal;
+        this.time = time;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    /**
+     * @return the principal name, or null if unknown
+     */
+    public String getPrincipal() {
+        return principal;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the tab separated time, realm, type and principal of this event
+     */
+    @Override
+    public String toString() {
+        return Instant.ofEpochMilli(time) + "\t" + realm + "\t" + type + "\t" + (principal == null ? "-" : principal);
+    }
+
+}
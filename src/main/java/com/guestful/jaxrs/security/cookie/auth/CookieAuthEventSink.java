@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Destination of the events of a {@link CookieAuthAudit}, called by its background thread only.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface CookieAuthEventSink extends AutoCloseable {
+
+    /**
+     * @param events a batch of events, only valid during the call
+     */
+    void write(List<CookieAuthEvent> events) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Appends the events to a file, one per line (see {@link CookieAuthEvent#toString()})
+     */
+    static CookieAuthEventSink file(Path path) throws IOException {
+        return new FileEventSink(path);
+    }
+
+    /**
+     * Keeps the last events in memory
+     */
+    static MemoryEventSink memory(int maxEvents) {
+        return new MemoryEventSink(maxEvents);
+    }
+
+}
@@ -15,20 +15,20 @@
  */
 package com.guestful.jaxrs.security.cookie.auth;
 
+import org.glassfish.hk2.api.InjectionResolver;
+import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import javax.annotation.Priority;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.*;
 import javax.ws.rs.core.*;
-import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.security.Principal;
-import java.security.SecureRandom;
-import java.util.Base64;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,81 +40,289 @@ public class CookieAuthFeature implements DynamicFeature, Feature {
 
     private static final Logger LOGGER = Logger.getLogger(CookieAuthFeature.class.getName());
     private static final Date EXPIRED = new Date(System.currentTimeMillis() - 604800000);
+    // not in Response.Status of JAX-RS 2.0
+    private static final int TOO_MANY_REQUESTS = 429;
+    // bad cookies sent by bots must not flood the logs
+    private static final SampledLog DECRYPT_FAILURES = new SampledLog(LOGGER, Level.WARNING, 10, 60000);
+    // returned by authenticate() when the request was aborted
+    private static final StoredPrincipal REJECTED = StoredPrincipal.store(null, TokenClaims.NONE, 0);
 
     @Inject CookieAuthRealmConfigs configs;
     @Inject CookieAuthorizer cookieAuthorizer;
 
+    // annotations indexed at compile time, loaded on first use
+    private CookieAuthIndex index;
+
     @Override
     public boolean configure(FeatureContext context) {
         context.register(new Binder());
+        context.register(new UnbindFilter());
+        context.register(new PreMatchingFilter());
         return true;
     }
 
     @Override
     public void configure(ResourceInfo resourceInfo, FeatureContext context) {
-        CookieAuth cookieAuth = resourceInfo.getResourceMethod().getAnnotation(CookieAuth.class);
-        if (cookieAuth == null) {
-            cookieAuth = resourceInfo.getResourceClass().getAnnotation(CookieAuth.class);
-        }
+        CookieAuth cookieAuth = index(resourceInfo.getResourceClass()).find(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
         if (cookieAuth != null) {
-            CookieAuthRealmConfig config = configs.getConfig(cookieAuth.realm());
-            context.register(new CookieAuthFilter(config, cookieAuth));
+            // fail fast on unknown realm
+            if (!CookieAuth.BY_HOST.equals(cookieAuth.realm())) {
+                configs.getRealm(cookieAuth.realm());
+            }
+            context.register(new CookieAuthFilter(configs, cookieAuth));
         }
     }
 
+    private CookieAuthIndex index(Class<?> resourceClass) {
+        if (index == null) {
+            try {
+                index = CookieAuthIndex.load(resourceClass.getClassLoader());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read " + CookieAuthIndex.LOCATION + ": " + e.getMessage(), e);
+            }
+        }
+        return index;
+    }
+
     public class Binder extends AbstractBinder {
         @Override
         protected void configure() {
             bindFactory(CookieSubjectFactory.class)
                 .to(CookieSubject.class)
                 .proxy(false);
+            bind(CookiePrincipalResolver.class)
+                .to(new TypeLiteral<InjectionResolver<CookiePrincipal>>() {})
+                .in(Singleton.class);
+        }
+    }
+
+    /**
+     * The subject of a request resumed asynchronously stays bound to the request thread: unbind it before the next request,
+     * ahead of the other filters of this feature
+     */
+    @PreMatching
+    @Priority(Priorities.AUTHENTICATION - 1)
+    static class UnbindFilter implements ContainerRequestFilter {
+        @Override
+        public void filter(ContainerRequestContext requestContext) throws IOException {
+            CookieSubjects.restore(null);
         }
     }
 
+    /**
+     * Rejects the requests to the pre-matching paths of the realms without a valid token before any resource matching.
+     * Accepted tokens are handed to {@link CookieAuthFilter} so that they are not decrypted twice.
+     */
+    @PreMatching
+    @Priority(Priorities.AUTHENTICATION)
+    class PreMatchingFilter implements ContainerRequestFilter {
+        @Override
+        public void filter(ContainerRequestContext requestContext) throws IOException {
+            CookieAuthRealm realm = configs.preMatch(requestContext.getUriInfo().getPath(false));
+            if (realm == null) {
+                return;
+            }
+            CookieAuthRealmMetrics metrics = realm.getMetrics();
+            String token = CookieScanner.find(requestContext, realm.getCookieName());
+            if (token == null) {
+                metrics.cookieMissing();
+                reject(realm, "Missing authentication token", requestContext);
+                return;
+            }
+            StoredPrincipal storedPrincipal = decrypt(realm, token);
+            if (storedPrincipal == null || expired(realm, storedPrincipal)) {
+                metrics.cookiePresent();
+                if (storedPrincipal != null) {
+                    metrics.expiredToken();
+                    realm.getListener().onExpiredToken(realm.getName(), storedPrincipal.principal);
+                }
+                reject(realm, "Invalid authentication token", requestContext);
+                return;
+            }
+            requestContext.setProperty(realm.getPreMatchedProperty(), storedPrincipal);
+        }
+    }
+
+    /**
+     * Rejects the request with a 401 response. The exception of the default mode is thrown, so nothing else runs.
+     */
+    private static void reject(CookieAuthRealm realm, String message, ContainerRequestContext requestContext) {
+        reject(realm.isAbortRejections(), message, requestContext);
+    }
+
+    private static void reject(boolean abort, String message, ContainerRequestContext requestContext) {
+        String challenge = CookieAuthRealm.challenge(requestContext.getUriInfo().getBaseUri());
+        if (!abort) {
+            throw new NotAuthorizedException(message, challenge);
+        }
+        requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED)
+            .header(HttpHeaders.WWW_AUTHENTICATE, challenge)
+            .build());
+    }
+
+    /**
+     * @return the token read, or null if it is not a token of this realm
+     */
+    private static StoredPrincipal decrypt(CookieAuthRealm realm, String token) {
+        BadTokenCache badTokens = realm.getBadTokens();
+        StoredPrincipal storedPrincipal = badTokens != null && badTokens.contains(token) ? null : StoredPrincipal.decrypt(realm.getKeyring(), token);
+        if (storedPrincipal == null) {
+            realm.addBadToken(token);
+            realm.getMetrics().decryptFailure();
+            realm.getListener().onDecryptFailure(realm.getName());
+        }
+        return storedPrincipal;
+    }
+
+    private static boolean expired(CookieAuthRealm realm, StoredPrincipal storedPrincipal) {
+        return storedPrincipal.expired(realm.getCookieMaxAge()) || realm.getRevocations().isRevoked(storedPrincipal.id1, storedPrincipal.id2, storedPrincipal.time);
+    }
+
     @Priority(Priorities.AUTHENTICATION)
     public class CookieAuthFilter implements ContainerRequestFilter, ContainerResponseFilter {
 
-        private final CookieAuthRealmConfig config;
+        private final CookieAuthRealmConfigs configs;
         private final CookieAuth cookieAuth;
+        private final boolean byHost;
 
-        public CookieAuthFilter(CookieAuthRealmConfig config, CookieAuth cookieAuth) {
-            this.config = config;
+        public CookieAuthFilter(CookieAuthRealmConfigs configs, CookieAuth cookieAuth) {
+            this.configs = configs;
             this.cookieAuth = cookieAuth;
+            this.byHost = CookieAuth.BY_HOST.equals(cookieAuth.realm());
+        }
+
+        public CookieAuthFilter(CookieAuthRealmConfig config, CookieAuth cookieAuth) {
+            this(new CookieAuthRealmConfigs().add(config), cookieAuth);
         }
 
         @Override
         public void filter(ContainerRequestContext requestContext) throws IOException {
-            Cookie cookie = requestContext.getCookies().get(config.getCookieName());
-            Principal principal = null;
-            if (cookie == null && !cookieAuth.optional()) {
-                throw new NotAuthorizedException("Missing authentication token", "GBASICAUTH realm=\"" + requestContext.getUriInfo().getBaseUri() + "\"");
-            } else if (cookie != null) {
-                StoredPrincipal storedPrincipal = StoredPrincipal.decrypt(config.getEncryptionKey(), cookie.getValue());
+            // one snapshot for the whole request, even if the realm is reloaded meanwhile
+            CookieAuthRealm realm = byHost ? configs.getRealmByHost(host(requestContext)) : configs.getRealm(cookieAuth.realm());
+            if (realm == null) {
+                // no realm serves this host: nobody can be authenticated
+                if (!cookieAuth.optional()) {
+                    reject(configs.isAbortRejections(), "Unknown host", requestContext);
+                    return;
+                }
+                bind(requestContext, new CookieSubject((Principal) null));
+                return;
+            }
+            // the authorizer is given the realm selected for the host
+            CookieAuth cookieAuth = byHost ? realm.resolve(this.cookieAuth) : this.cookieAuth;
+            // only our cookie is looked up in the header, once for both filters
+            String token = CookieScanner.find(requestContext, realm.getCookieName());
+            CookieSubject cookieSubject;
+            if (cookieAuth.optional() && cookieAuth.lazy()) {
+                // the request context is still valid while the resource runs
+                cookieSubject = CookieSubject.lazy(() -> authenticate(realm, cookieAuth, token, requestContext));
+            } else {
+                StoredPrincipal storedPrincipal = authenticate(realm, cookieAuth, token, requestContext);
+                if (storedPrincipal == REJECTED || storedPrincipal != null && rateLimited(realm, storedPrincipal, requestContext)) {
+                    return;
+                }
+                cookieSubject = new CookieSubject(storedPrincipal);
+            }
+            cookieSubject.requestToken = token;
+            cookieSubject.realm = realm;
+            bind(requestContext, cookieSubject);
+        }
+
+        private void bind(ContainerRequestContext requestContext, CookieSubject cookieSubject) {
+            requestContext.setProperty(CookieSubject.class.getName(), cookieSubject);
+            requestContext.setSecurityContext(new CookieSecurityContext(cookieSubject, requestContext.getSecurityContext()));
+            CookieSubjects.bind(cookieSubject);
+        }
+
+        private String host(ContainerRequestContext requestContext) {
+            String host = requestContext.getHeaderString(HttpHeaders.HOST);
+            return host != null ? host : requestContext.getUriInfo().getRequestUri().getHost();
+        }
+
+        /**
+         * Lazy subjects are not limited: they are only resolved by the resource, too late to reject the request.
+         *
+         * @return true if the request was aborted because the principal is over the rate limit of the realm
+         */
+        private boolean rateLimited(CookieAuthRealm realm, StoredPrincipal storedPrincipal, ContainerRequestContext requestContext) {
+            PrincipalRateLimiter rateLimiter = realm.getRateLimiter();
+            if (rateLimiter == null) {
+                return false;
+            }
+            long wait = rateLimiter.acquire(storedPrincipal.principal.getName(), System.nanoTime());
+            if (wait == 0) {
+                return false;
+            }
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Stored Principal rate limited: " + storedPrincipal.principal);
+            }
+            realm.getMetrics().rateLimited();
+            requestContext.abortWith(Response.status(TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, (wait + 999_999_999) / 1_000_000_000)
+                .build());
+            return true;
+        }
+
+        /**
+         * @return the valid and authorized token of the request, null if the access is optional,
+         * or {@link CookieAuthFeature#REJECTED} if the access is not optional and the request was aborted
+         * @throws NotAuthorizedException if the access is not optional and the realm does not abort rejections
+         */
+        private StoredPrincipal authenticate(CookieAuthRealm realm, CookieAuth cookieAuth, String token, ContainerRequestContext requestContext) {
+            CookieAuthRealmMetrics metrics = realm.getMetrics();
+            StoredPrincipal accepted = null;
+            if (token == null) {
+                metrics.cookieMissing();
+            } else {
+                metrics.cookiePresent();
+            }
+            if (token == null && !cookieAuth.optional()) {
+                reject(realm, "Missing authentication token", requestContext);
+                return REJECTED;
+            } else if (token != null) {
+                // already read before matching when the path is one of the pre-matching paths of the realm
+                StoredPrincipal storedPrincipal = (StoredPrincipal) requestContext.getProperty(realm.getPreMatchedProperty());
+                if (storedPrincipal == null) {
+                    storedPrincipal = decrypt(realm, token);
+                }
                 if (storedPrincipal != null) {
-                    LOGGER.log(Level.FINEST, "Stored Principal: " + storedPrincipal.principal);
-                    // expiration check;
-                    if (storedPrincipal.expired(config.getCookieMaxAge())) {
-                        LOGGER.log(Level.FINEST, "Stored Principal expired: " + storedPrincipal.principal);
+                    if (LOGGER.isLoggable(Level.FINEST)) {
+                        LOGGER.log(Level.FINEST, "Stored Principal: " + storedPrincipal.principal);
+                    }
+                    // expiration and revocation check;
+                    if (expired(realm, storedPrincipal)) {
+                        if (LOGGER.isLoggable(Level.FINEST)) {
+                            LOGGER.log(Level.FINEST, "Stored Principal expired or revoked: " + storedPrincipal.principal);
+                        }
+                        metrics.expiredToken();
+                        realm.getListener().onExpiredToken(realm.getName(), storedPrincipal.principal);
                         if (!cookieAuth.optional()) {
-                            throw new NotAuthorizedException("Expired authentication token", "GBASICAUTH realm=\"" + requestContext.getUriInfo().getBaseUri() + "\"");
+                            reject(realm, "Expired authentication token", requestContext);
+                            return REJECTED;
                         }
                     } else {
                         // authz check
-                        if (!cookieAuthorizer.isAuthorized(storedPrincipal.principal, cookieAuth)) {
-                            LOGGER.log(Level.FINEST, "Stored Principal not authroized: " + storedPrincipal.principal);
+                        long start = System.nanoTime();
+                        boolean authorized = cookieAuthorizer.isAuthorized(storedPrincipal.principal, storedPrincipal.claims, cookieAuth);
+                        metrics.authorization(authorized, System.nanoTime() - start);
+                        if (!authorized) {
+                            if (LOGGER.isLoggable(Level.FINEST)) {
+                                LOGGER.log(Level.FINEST, "Stored Principal not authroized: " + storedPrincipal.principal);
+                            }
+                            realm.getListener().onDenied(realm.getName(), storedPrincipal.principal);
                             if (!cookieAuth.optional()) {
-                                throw new NotAuthorizedException("Not authorized", "GBASICAUTH realm=\"" + requestContext.getUriInfo().getBaseUri() + "\"");
+                                reject(realm, "Not authorized", requestContext);
+                                return REJECTED;
                             }
                         } else {
                             // expiration and authz checks passed
-                            principal = storedPrincipal.principal;
+                            accepted = storedPrincipal;
                         }
                     }
 
                 }
             }
-            CookieSubject cookieSubject = new CookieSubject(principal);
-            requestContext.setProperty(CookieSubject.class.getName(), cookieSubject);
+            return accepted;
         }
 
         @Override
@@ -124,115 +332,245 @@ public class CookieAuthFeature implements DynamicFeature, Feature {
             if (cookieSubject != null) {
 
                 requestContext.removeProperty(CookieSubject.class.getName());
+                CookieSubjects.unbind(cookieSubject);
+
+                if (!cookieSubject.isResolved() || cookieSubject.realm == null) {
+                    // lazy subject never used, or no realm for the host: leave the cookie as is
+                    return;
+                }
+
+                // cookies are issued by the realm the request was authenticated with, even if it was reloaded or removed since
+                CookieAuthRealm realm = cookieSubject.realm;
+
+                // a valid token is kept as is when the refresh policy allows it
+                boolean keep = !cookieSubject.isAnonymous() && !mustRefresh(realm, cookieSubject);
 
-                if (!cookieSubject.isAnonymous()) {
-                    responseContext.getHeaders().add(HttpHeaders.SET_COOKIE, new NewCookie(
-                            config.getCookieName(),
-                            StoredPrincipal.store(cookieSubject.getPrincipal()).encrypt(config.getEncryptionKey()),
-                            config.getCookiePath(),
-                            config.getCookieDomain(),
-                            null,
-                            config.getCookieMaxAge(),
-                            false,
-                            true)
-                    );
+                boolean issued = !cookieSubject.isAnonymous() && !keep;
+                if (issued) {
+                    responseContext.getHeaders().add(HttpHeaders.SET_COOKIE, setCookie(realm, cookieSubject.getPrincipal(), cookieSubject.getClaims()));
+                    realm.getMetrics().cookieIssued();
                 }
 
-                Cookie cookie = requestContext.getCookies().get(config.getCookieName());
-                if (cookie != null && !responseContext.getCookies().containsKey(cookie.getName())) {
+                // the response cookies are only parsed when the request had our cookie and we did not replace it
+                if (!keep && !issued && cookieSubject.requestToken != null && !responseContext.getCookies().containsKey(realm.getCookieName())) {
                     responseContext.getHeaders().addFirst(HttpHeaders.SET_COOKIE, new NewCookie(
-                        cookie.getName(),
+                        realm.getCookieName(),
                         "delete",
-                        config.getCookiePath(),
-                        config.getCookieDomain(),
-                        cookie.getVersion(),
+                        realm.getCookiePath(),
+                        realm.getCookieDomain(),
+                        Cookie.DEFAULT_VERSION,
                         null,
                         0,
                         EXPIRED,
                         false,
                         true));
+                    realm.getMetrics().cookieDeleted();
                 }
             }
         }
 
+        /**
+         * @return the cookie of a new token, already rendered if the realm caches Set-Cookie headers
+         */
+        private Object setCookie(CookieAuthRealm realm, Principal principal, TokenClaims claims) {
+            long time = realm.issueTime(principal, System.currentTimeMillis());
+            SetCookieCache setCookies = realm.getSetCookies();
+            String header = setCookies == null ? null : setCookies.get(principal.getName(), claims, time);
+            if (header != null) {
+                return header;
+            }
+            NewCookie cookie = new NewCookie(
+                realm.getCookieName(),
+                StoredPrincipal.store(principal, claims, time).encrypt(realm.getKeyring(), realm.getTokenFormat()),
+                realm.getCookiePath(),
+                realm.getCookieDomain(),
+                null,
+                realm.getCookieMaxAge(),
+                false,
+                true);
+            if (setCookies == null) {
+                return cookie;
+            }
+            header = cookie.toString();
+            setCookies.put(principal.getName(), claims, time, header);
+            return header;
+        }
+
+        private boolean mustRefresh(CookieAuthRealm realm, CookieSubject cookieSubject) {
+            StoredPrincipal storedPrincipal = cookieSubject.storedPrincipal;
+            // login() and logout() replace the principal read from the token
+            return storedPrincipal == null
+                || storedPrincipal.principal != cookieSubject.getPrincipal()
+                || storedPrincipal.claims != cookieSubject.getClaims()
+                || storedPrincipal.keyVersion != realm.getKeyring().getActiveVersion()
+                || realm.getRefreshPolicy().shouldRefresh(storedPrincipal.time, System.currentTimeMillis(), realm.getCookieMaxAge());
+        }
+
     }
 
     static class StoredPrincipal {
 
+        static final int TOKEN_LENGTH = 24;
+        static final int PRINCIPAL_LENGTH = 16;
+        static final int MAX_PRINCIPAL_LENGTH = 64;
+        static final long CLOCK_SKEW = 5 * 60 * 1000;
+
+        private static final byte V1 = 1;
+        private static final int AUTHENTICATED = 1;
+        private static final int ROLES = 2;
+        private static final int TENANT = 4;
+        private static final long ID1_SEED = 0x6a09e667f3bcc908L;
+        private static final long ID2_SEED = 0xbb67ae8584caa73bL;
+
         final Principal principal;
         final long time;
-
-        private StoredPrincipal(Principal principal, long time) {
+        final TokenClaims claims;
+        // version of the key used to read this token, -1 if not read from a token
+        final int keyVersion;
+        // principal id bytes, when read from a token
+        final long id1;
+        final long id2;
+
+        private StoredPrincipal(Principal principal, long time, TokenClaims claims, int keyVersion, long id1, long id2) {
             this.principal = principal;
             this.time = time;
+            this.claims = claims;
+            this.keyVersion = keyVersion;
+            this.id1 = id1;
+            this.id2 = id2;
         }
 
         boolean expired(long maxAgeSec) {
             return time + maxAgeSec * 1000L <= System.currentTimeMillis();
         }
 
-        String encrypt(String encryptionKey) {
-            try {
-                ByteBuffer bb = ByteBuffer.allocate(24);
-                bb.putLong(time);
-                bb.put(Base64.getUrlDecoder().decode(principal.getName()));
-                XOR.newInstance(encryptionKey).xor(bb.array());
-                return Base64.getUrlEncoder().encodeToString(bb.array()).replace("=", "");
-            } catch (Exception e) {
-                throw new IllegalArgumentException("Unable to encrypt principal " + principal, e);
+        String encrypt(Keyring keyring) {
+            return encrypt(keyring, TokenFormat.LEGACY);
+        }
+
+        String encrypt(Keyring keyring, TokenFormat format) {
+            byte[] bytes = TokenCodec.scratch();
+            int len;
+            if (format == TokenFormat.LEGACY) {
+                TokenCodec.putLong(bytes, 0, time);
+                int n = TokenCodec.decode(principal.getName(), bytes, 8, PRINCIPAL_LENGTH);
+                if (n < 0) {
+                    throw new IllegalArgumentException("Unable to encrypt principal " + principal);
+                }
+                Arrays.fill(bytes, 8 + n, TOKEN_LENGTH, (byte) 0);
+                len = TOKEN_LENGTH;
+            } else {
+                bytes[0] = V1;
+                bytes[1] = (byte) ((claims.isAuthenticated() ? AUTHENTICATED : 0) | (claims.getRoles() != 0 ? ROLES : 0) | (claims.getTenant() != 0 ? TENANT : 0));
+                int off = TokenCodec.putVarLong(bytes, 2, time);
+                // the id length fits in one varint byte
+                int n = TokenCodec.decode(principal.getName(), bytes, off + 1, MAX_PRINCIPAL_LENGTH);
+                if (n <= 0) {
+                    throw new IllegalArgumentException("Unable to encrypt principal " + principal);
+                }
+                bytes[off] = (byte) n;
+                len = off + 1 + n;
+                if (claims.getRoles() != 0) {
+                    len = TokenCodec.putVarLong(bytes, len, claims.getRoles());
+                }
+                if (claims.getTenant() != 0) {
+                    len = TokenCodec.putVarLong(bytes, len, claims.getTenant());
+                }
             }
+            byte[] sealed = TokenCodec.sealed();
+            len = keyring.getActiveKey().seal(bytes, len, sealed);
+            return TokenCodec.encode(sealed, 0, len);
         }
 
         static StoredPrincipal store(Principal principal) {
-            return new StoredPrincipal(principal, System.currentTimeMillis());
+            return store(principal, TokenClaims.NONE);
         }
 
-        static StoredPrincipal decrypt(String encryptionKey, String cookieValue) {
-            try {
-                ByteBuffer bb = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cookieValue));
-                if (bb.array().length != 24) {
-                    throw new IllegalStateException("bad length: " + bb.array().length);
-                }
-                XOR.newInstance(encryptionKey).xor(bb.array());
-                long time = bb.getLong();
-                byte[] principal = new byte[16];
-                bb.get(principal);
-                String id = Base64.getUrlEncoder().encodeToString(principal).replace("=", "");
-                return new StoredPrincipal(new NamedPrincipal(id), time);
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, "Unable to decrypt cookie value: " + cookieValue, e);
-                return null;
-            }
+        static StoredPrincipal store(Principal principal, TokenClaims claims) {
+            return store(principal, claims, System.currentTimeMillis());
         }
 
-    }
+        static StoredPrincipal store(Principal principal, TokenClaims claims, long time) {
+            return new StoredPrincipal(principal, time, claims, -1, 0, 0);
+        }
 
-    public static void main(String[] args) {
-        byte[] bytes = new byte[24];
-        new SecureRandom().nextBytes(bytes);
-        String key = System.getProperty("key", DatatypeConverter.printHexBinary(bytes));
-        System.out.println(key);
+        /**
+         * Tries the keys of the keyring in turn, starting with the active one. A key is considered the right one
+         * when it opens the token, the token parses, and the token time it decodes is plausible, that is not after now (plus some clock skew).
+         */
+        static StoredPrincipal decrypt(Keyring keyring, CharSequence cookieValue) {
+            byte[] sealed = TokenCodec.sealed();
+            int n = TokenCodec.decode(cookieValue, sealed, 0, TokenCodec.MAX_TOKEN_LENGTH);
+            if (n < 0) {
+                DECRYPT_FAILURES.log(() -> "Unable to decrypt cookie value: " + cookieValue + " (bad encoding)");
+                return null;
+            }
+            byte[] bytes = TokenCodec.scratch();
+            long maxTime = System.currentTimeMillis() + CLOCK_SKEW;
+            for (int i = 0; i < keyring.size(); i++) {
+                int len = keyring.getKey(i).open(sealed, n, bytes);
+                StoredPrincipal storedPrincipal = len == TOKEN_LENGTH && bytes[0] == 0 ? readLegacy(bytes, keyring.getVersion(i))
+                    : len > 0 && bytes[0] == V1 ? readV1(bytes, len, keyring.getVersion(i))
+                    : null;
+                if (storedPrincipal != null && storedPrincipal.time >= 0 && storedPrincipal.time <= maxTime) {
+                    return storedPrincipal;
+                }
+            }
+            DECRYPT_FAILURES.log(() -> "Unable to decrypt cookie value: " + cookieValue + " (no matching key)");
+            return null;
+        }
 
-        String id = "n0URmCU1_KkkygLn9-1wlQ";
+        private static StoredPrincipal readLegacy(byte[] bytes, int keyVersion) {
+            String id = TokenCodec.encode(bytes, 8, PRINCIPAL_LENGTH);
+            return new StoredPrincipal(new NamedPrincipal(id), TokenCodec.getLong(bytes, 0), TokenClaims.NONE, keyVersion, TokenCodec.getLong(bytes, 8), TokenCodec.getLong(bytes, 16));
+        }
 
-        StoredPrincipal storedPrincipal = StoredPrincipal.store(new NamedPrincipal(id));
-        System.out.println(storedPrincipal.principal);
-        System.out.println(storedPrincipal.time);
+        /**
+         * @return null if the bytes are not a well formed V1 token
+         */
+        private static StoredPrincipal readV1(byte[] bytes, int len, int keyVersion) {
+            if (len < 4) return null;
+            int flags = bytes[1];
+            if ((flags & ~(AUTHENTICATED | ROLES | TENANT)) != 0) return null;
+            int off = 2;
+            int size = TokenCodec.varLongSize(bytes, off, len);
+            if (size < 0) return null;
+            long time = TokenCodec.getVarLong(bytes, off);
+            off += size;
+            int n = bytes[off++];
+            if (n <= 0 || n > MAX_PRINCIPAL_LENGTH || off + n > len) return null;
+            int idOff = off;
+            off += n;
+            long roles = 0;
+            if ((flags & ROLES) != 0) {
+                size = TokenCodec.varLongSize(bytes, off, len);
+                if (size < 0) return null;
+                roles = TokenCodec.getVarLong(bytes, off);
+                off += size;
+            }
+            long tenant = 0;
+            if ((flags & TENANT) != 0) {
+                size = TokenCodec.varLongSize(bytes, off, len);
+                if (size < 0) return null;
+                tenant = TokenCodec.getVarLong(bytes, off);
+                off += size;
+            }
+            if (off != len) return null;
+            String id = TokenCodec.encode(bytes, idOff, n);
+            return new StoredPrincipal(new NamedPrincipal(id), time, TokenClaims.of((flags & AUTHENTICATED) != 0, roles, tenant), keyVersion, id1(bytes, idOff, n), id2(bytes, idOff, n));
+        }
 
-        String encr = storedPrincipal.encrypt(key);
-        System.out.println(encr);
+        /**
+         * First half of the revocation id of a principal: its 16 bytes id, or a hash of ids of other lengths
+         */
+        static long id1(byte[] id, int off, int len) {
+            return len == PRINCIPAL_LENGTH ? TokenCodec.getLong(id, off) : TokenCodec.hash64(id, off, len, ID1_SEED);
+        }
 
-        StoredPrincipal decr = StoredPrincipal.decrypt(key, encr);
-        System.out.println(decr.principal);
-        System.out.println(decr.time);
+        static long id2(byte[] id, int off, int len) {
+            return len == PRINCIPAL_LENGTH ? TokenCodec.getLong(id, off + 8) : TokenCodec.hash64(id, off, len, ID2_SEED);
+        }
 
-        storedPrincipal = StoredPrincipal.decrypt(key, "bjBUGDhszKO7BosRMv62PZlsrhlvCns_");
-        System.out.println(storedPrincipal.principal);
-        System.out.println("cookie time = " + new Date(storedPrincipal.time));
-        System.out.println("now = " + new Date());
-        System.out.println("diff (sec) = " + (System.currentTimeMillis() - storedPrincipal.time) / 1000);
-        System.out.println("30 days in sec = " + (30 * 24 * 60 * 60));
-        System.out.println(storedPrincipal.expired(30 * 24 * 60 * 60));
     }
 
 }
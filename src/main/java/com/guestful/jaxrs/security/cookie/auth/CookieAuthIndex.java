@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Index of the {@link CookieAuth} annotations generated at compile time by {@link CookieAuthProcessor}, so that
+ * resource methods are not searched for annotations at deployment. Entries, by binary class name:
+ * <ul>
+ * <li><code>[class]</code>: settings of the class level annotation, empty if none. Every class compiled is listed.</li>
+ * <li><code>[class]#[method]/[parameter count]</code>: settings of the method level annotation, only listed if annotated.</li>
+ * </ul>
+ * Settings are <code>[optional],[lazy],[realm]</code>, or <code>?</code> when overloads cannot be told apart.
+ * Classes not listed, like the ones compiled without the processor, are read by reflection.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class CookieAuthIndex {
+
+    static final String LOCATION = "META-INF/guestful/cookie-auth.index";
+    static final String REFLECT = "?";
+
+    private final Map<String, String> entries;
+
+    private CookieAuthIndex(Map<String, String> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return the merged indexes of all the jars seen by this class loader
+     */
+    static CookieAuthIndex load(ClassLoader loader) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        Enumeration<URL> urls = loader == null ? ClassLoader.getSystemResources(LOCATION) : loader.getResources(LOCATION);
+        while (urls.hasMoreElements()) {
+            Properties properties = new Properties();
+            try (InputStream is = urls.nextElement().openStream()) {
+                properties.load(is);
+            }
+            for (String key : properties.stringPropertyNames()) {
+                entries.put(key, properties.getProperty(key));
+            }
+        }
+        return new CookieAuthIndex(entries);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the annotation of the resource method, or of the resource class, or null if none
+     */
+    CookieAuth find(Class<?> resourceClass, Method method) {
+        String type = entries.get(resourceClass.getName());
+        String declaringType = entries.get(method.getDeclaringClass().getName());
+        if (type == null || declaringType == null) {
+            return reflect(resourceClass, method);
+        }
+        String settings = entries.get(method.getDeclaringClass().getName() + "#" + method.getName() + "/" + method.getParameterCount());
+        if (settings == null) {
+            settings = type;
+        }
+        return REFLECT.equals(settings) ? reflect(resourceClass, method) : parse(settings);
+    }
+
+    static CookieAuth reflect(Class<?> resourceClass, Method method) {
+        CookieAuth cookieAuth = method.getAnnotation(CookieAuth.class);
+        return cookieAuth != null ? cookieAuth : resourceClass.getAnnotation(CookieAuth.class);
+    }
+
+    static String settings(CookieAuth cookieAuth) {
+        return cookieAuth == null ? "" : cookieAuth.optional() + "," + cookieAuth.lazy() + "," + cookieAuth.realm();
+    }
+
+    static CookieAuth parse(String settings) {
+        if (settings.isEmpty()) {
+            return null;
+        }
+        String[] parts = settings.split(",", 3);
+        if (parts.length != 3) throw new IllegalArgumentException("Bad index entry: " + settings);
+        return new IndexedCookieAuth(parts[2], Boolean.parseBoolean(parts[0]), Boolean.parseBoolean(parts[1]));
+    }
+
+    /**
+     * Annotation instance read from the index, equal to the one declared in the source.
+     * Also stands for a {@link CookieAuth#BY_HOST} annotation once the realm of the request is known.
+     */
+    static final class IndexedCookieAuth implements CookieAuth {
+
+        private final String realm;
+        private final boolean optional;
+        private final boolean lazy;
+
+        IndexedCookieAuth(String realm, boolean optional, boolean lazy) {
+            this.realm = realm;
+            this.optional = optional;
+            this.lazy = lazy;
+        }
+
+        @Override
+        public String realm() {
+            return realm;
+        }
+
+        @Override
+        public boolean optional() {
+            return optional;
+        }
+
+        @Override
+        public boolean lazy() {
+            return lazy;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return CookieAuth.class;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CookieAuth)) return false;
+            CookieAuth that = (CookieAuth) o;
+            return realm.equals(that.realm()) && optional == that.optional() && lazy == that.lazy();
+        }
+
+        // as specified by Annotation.hashCode()
+        @Override
+        public int hashCode() {
+            return (127 * "realm".hashCode() ^ realm.hashCode())
+                + (127 * "optional".hashCode() ^ Boolean.hashCode(optional))
+                + (127 * "lazy".hashCode() ^ Boolean.hashCode(lazy));
+        }
+
+        @Override
+        public String toString() {
+            return "@" + CookieAuth.class.getName() + "(realm=" + realm + ", optional=" + optional + ", lazy=" + lazy + ")";
+        }
+    }
+
+}
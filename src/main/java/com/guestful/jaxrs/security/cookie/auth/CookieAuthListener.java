@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+
+/**
+ * Receives the authentication events of all realms, to audit them. Called on the request threads: implementations must
+ * be fast and non-blocking, like {@link CookieAuthAudit} which hands the events to a background thread.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface CookieAuthListener {
+
+    default void onLogin(String realm, Principal principal) {
+    }
+
+    default void onLogout(String realm, Principal principal) {
+    }
+
+    /**
+     * Expired or revoked token
+     */
+    default void onExpiredToken(String realm, Principal principal) {
+    }
+
+    default void onDenied(String realm, Principal principal) {
+    }
+
+    default void onDecryptFailure(String realm) {
+    }
+
+}
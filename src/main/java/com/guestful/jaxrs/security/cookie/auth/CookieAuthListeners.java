@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listeners shared by the realms of a {@link CookieAuthRealmConfigs}
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class CookieAuthListeners implements CookieAuthListener {
+
+    private final List<CookieAuthListener> listeners = new CopyOnWriteArrayList<>();
+
+    void add(CookieAuthListener listener) {
+        if (listener == null) throw new NullPointerException();
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onLogin(String realm, Principal principal) {
+        for (CookieAuthListener listener : listeners) {
+            listener.onLogin(realm, principal);
+        }
+    }
+
+    @Override
+    public void onLogout(String realm, Principal principal) {
+        for (CookieAuthListener listener : listeners) {
+            listener.onLogout(realm, principal);
+        }
+    }
+
+    @Override
+    public void onExpiredToken(String realm, Principal principal) {
+        for (CookieAuthListener listener : listeners) {
+            listener.onExpiredToken(realm, principal);
+        }
+    }
+
+    @Override
+    public void onDenied(String realm, Principal principal) {
+        for (CookieAuthListener listener : listeners) {
+            listener.onDenied(realm, principal);
+        }
+    }
+
+    @Override
+    public void onDecryptFailure(String realm) {
+        for (CookieAuthListener listener : listeners) {
+            listener.onDecryptFailure(realm);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+/**
+ * Receives the measures of a realm, to feed your own metrics registry. Called on the request threads: implementations must be fast and non-blocking.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface CookieAuthMetricsListener {
+
+    default void onCookiePresent(String realm) {
+    }
+
+    default void onCookieMissing(String realm) {
+    }
+
+    default void onDecryptFailure(String realm) {
+    }
+
+    default void onExpiredToken(String realm) {
+    }
+
+    default void onAuthorization(String realm, boolean authorized, long durationNanos) {
+    }
+
+    default void onCookieIssued(String realm) {
+    }
+
+    default void onCookieDeleted(String realm) {
+    }
+
+    default void onRateLimited(String realm) {
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Generates the {@link CookieAuthIndex} of the classes compiled. Enabled by having this module on the compile classpath.
+ * <p>
+ * With the option <code>-Acookieauth.realms=realm1,realm2</code>, annotations referencing another realm fail the build.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieAuthProcessor extends AbstractProcessor {
+
+    static final String REALMS_OPTION = "cookieauth.realms";
+
+    private final Map<String, String> entries = new TreeMap<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // all classes must be listed, annotated or not
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(REALMS_OPTION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            index(type);
+        }
+        if (roundEnv.processingOver() && !entries.isEmpty()) {
+            write();
+        }
+        // other processors may also handle @CookieAuth
+        return false;
+    }
+
+    private void index(TypeElement type) {
+        String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+        entries.put(name, CookieAuthIndex.settings(check(type)));
+        Map<String, Set<String>> overloads = new HashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            String key = name + "#" + method.getSimpleName() + "/" + method.getParameters().size();
+            overloads.computeIfAbsent(key, k -> new HashSet<>()).add(CookieAuthIndex.settings(check(method)));
+        }
+        for (Map.Entry<String, Set<String>> entry : overloads.entrySet()) {
+            Set<String> settings = entry.getValue();
+            if (settings.size() > 1) {
+                entries.put(entry.getKey(), CookieAuthIndex.REFLECT);
+            } else if (!settings.contains("")) {
+                entries.put(entry.getKey(), settings.iterator().next());
+            }
+        }
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            index(nested);
+        }
+    }
+
+    private CookieAuth check(Element element) {
+        CookieAuth cookieAuth = element.getAnnotation(CookieAuth.class);
+        if (cookieAuth == null) {
+            return null;
+        }
+        String realms = processingEnv.getOptions().get(REALMS_OPTION);
+        if (realms != null && !CookieAuth.BY_HOST.equals(cookieAuth.realm()) && !Arrays.asList(realms.split(",")).contains(cookieAuth.realm())) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unknown realm '" + cookieAuth.realm() + "', declared realms: " + realms, element);
+        }
+        if (cookieAuth.realm().isEmpty()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Empty realm", element);
+        }
+        return cookieAuth;
+    }
+
+    private void write() {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", CookieAuthIndex.LOCATION);
+            try (OutputStream os = file.openOutputStream()) {
+                properties.store(os, "@CookieAuth index, generated by " + CookieAuthProcessor.class.getName());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write " + CookieAuthIndex.LOCATION + ": " + e.getMessage());
+        }
+    }
+
+}
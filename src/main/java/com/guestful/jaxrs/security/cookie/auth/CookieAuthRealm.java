@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable compiled settings of a realm, as used by the filters. A new one is compiled each time its
+ * {@link CookieAuthRealmConfig} is added or reloaded; metrics and revocations are kept from one to the next.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CookieAuthRealm {
+
+    private static final int MAX_CHALLENGES = 256;
+    // challenges do not depend on the realm: they are shared, by base URI (one per host and context path served)
+    private static final ConcurrentMap<URI, String> CHALLENGES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String cookieName;
+    private final String cookiePath;
+    private final String cookieDomain;
+    private final int cookieMaxAge;
+    private final Keyring keyring;
+    private final CookieRefreshPolicy refreshPolicy;
+    private final TokenFormat tokenFormat;
+    private final int badTokenCacheSize;
+    private final long issueTimeBucket;
+    private final int setCookieCacheSize;
+    // caches are allocated on first use: with a realm per tenant, most realms see little traffic
+    private volatile BadTokenCache badTokens;
+    private volatile SetCookieCache setCookies;
+    private final PrincipalRateLimiter rateLimiter;
+    private final CookieAuthRealmMetrics metrics;
+    private final RevocationIndex revocations;
+    private final CookieAuthListener listener;
+    private final String preMatchedProperty;
+    private final boolean abortRejections;
+    // CookieAuth.BY_HOST annotations resolved to this realm, by optional and lazy flags
+    private final CookieAuth[] hostCookieAuths = new CookieAuth[4];
+
+    private CookieAuthRealm(CookieAuthRealmConfig config, CookieAuthRealm previous, CookieAuthListener listener) {
+        if (config.getRealName() == null) throw new IllegalArgumentException("Missing realm name");
+        if (config.getCookieName() == null) throw new IllegalArgumentException("Missing cookie name for realm " + config.getRealName());
+        this.name = config.getRealName();
+        this.cookieName = config.getCookieName();
+        this.cookiePath = config.getCookiePath();
+        this.cookieDomain = config.getCookieDomain();
+        this.cookieMaxAge = config.getCookieMaxAge();
+        this.keyring = Keyring.compile(config.getEncryptionKeys(), config.getActiveKeyVersion(), config.getTokenCipher());
+        this.refreshPolicy = config.getRefreshPolicy();
+        this.tokenFormat = config.getTokenFormat();
+        if (tokenFormat == TokenFormat.V1 && !keyring.isAuthenticated()) {
+            throw new IllegalArgumentException("Token format V1 of realm " + name + " requires an authenticated token cipher (aes-gcm or hmac-sha256): its claims could be forged");
+        }
+        // bad tokens are only bad for a given keyring
+        this.badTokenCacheSize = config.getBadTokenCacheSize();
+        this.issueTimeBucket = config.getIssueTimeBucket() * 1000L;
+        // rendered headers are only valid for the keys and cookie settings of this snapshot
+        this.setCookieCacheSize = issueTimeBucket == 0 ? 0 : config.getSetCookieCacheSize();
+        // buckets survive reloads which do not change the limits
+        this.rateLimiter = config.getRateLimit() == 0 ? null
+            : previous != null && previous.rateLimiter != null && previous.rateLimiter.sameSettings(config.getRateLimit(), config.getRateLimitBurst(), config.getRateLimiterSize()) ? previous.rateLimiter
+            : new PrincipalRateLimiter(config.getRateLimit(), config.getRateLimitBurst(), config.getRateLimiterSize());
+        this.metrics = previous == null ? new CookieAuthRealmMetrics(name) : previous.metrics;
+        this.revocations = previous == null ? new RevocationIndex(cookieMaxAge) : previous.revocations;
+        this.listener = listener;
+        this.preMatchedProperty = CookieAuthFeature.StoredPrincipal.class.getName() + "." + name;
+        this.abortRejections = config.isAbortRejections();
+        for (int i = 0; i < hostCookieAuths.length; i++) {
+            hostCookieAuths[i] = new CookieAuthIndex.IndexedCookieAuth(name, (i & 2) != 0, (i & 1) != 0);
+        }
+    }
+
+    static CookieAuthRealm compile(CookieAuthRealmConfig config, CookieAuthRealm previous) {
+        return compile(config, previous, new CookieAuthListeners());
+    }
+
+    static CookieAuthRealm compile(CookieAuthRealmConfig config, CookieAuthRealm previous, CookieAuthListener listener) {
+        return new CookieAuthRealm(config, previous, listener);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCookieName() {
+        return cookieName;
+    }
+
+    public String getCookiePath() {
+        return cookiePath;
+    }
+
+    public String getCookieDomain() {
+        return cookieDomain;
+    }
+
+    public int getCookieMaxAge() {
+        return cookieMaxAge;
+    }
+
+    public CookieRefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    public TokenFormat getTokenFormat() {
+        return tokenFormat;
+    }
+
+    public CookieAuthRealmMetrics getMetrics() {
+        return metrics;
+    }
+
+    public RevocationIndex getRevocations() {
+        return revocations;
+    }
+
+    Keyring getKeyring() {
+        return keyring;
+    }
+
+    /**
+     * @return the issue time of a token issued now, rounded down to the bucket of the realm but not before the last
+     * revocation of the principal, so that a principal logging in again right after being revoked is not rejected
+     */
+    long issueTime(Principal principal, long now) {
+        return issueTimeBucket == 0 ? now : Math.max(now - now % issueTimeBucket, revocations.getNotBefore(principal));
+    }
+
+    /**
+     * @return null if disabled
+     */
+    PrincipalRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return null if disabled
+     */
+    SetCookieCache getSetCookies() {
+        SetCookieCache setCookies = this.setCookies;
+        if (setCookies == null && setCookieCacheSize != 0) {
+            // concurrent first uses may each create one: only the entries of the one lost are lost
+            this.setCookies = setCookies = new SetCookieCache(setCookieCacheSize);
+        }
+        return setCookies;
+    }
+
+    /**
+     * @return null if disabled, or if no bad token was added yet
+     */
+    BadTokenCache getBadTokens() {
+        return badTokens;
+    }
+
+    void addBadToken(String token) {
+        BadTokenCache badTokens = this.badTokens;
+        if (badTokens == null) {
+            if (badTokenCacheSize == 0) {
+                return;
+            }
+            this.badTokens = badTokens = new BadTokenCache(badTokenCacheSize);
+        }
+        badTokens.add(token);
+    }
+
+    /**
+     * @return the listeners of the authentication events of this realm
+     */
+    CookieAuthListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the request property holding the token of this realm already read by the pre-matching filter
+     */
+    String getPreMatchedProperty() {
+        return preMatchedProperty;
+    }
+
+    boolean isAbortRejections() {
+        return abortRejections;
+    }
+
+    /**
+     * @return a {@link CookieAuth#BY_HOST} annotation with this realm instead
+     */
+    CookieAuth resolve(CookieAuth cookieAuth) {
+        return hostCookieAuths[(cookieAuth.optional() ? 2 : 0) | (cookieAuth.lazy() ? 1 : 0)];
+    }
+
+    /**
+     * @return the WWW-Authenticate header of the 401 responses of an application
+     */
+    static String challenge(URI baseUri) {
+        String challenge = CHALLENGES.get(baseUri);
+        if (challenge == null) {
+            challenge = CookieSecurityContext.AUTHENTICATION_SCHEME + " realm=\"" + baseUri + "\"";
+            // base URIs built from arbitrary Host headers are not all kept
+            if (CHALLENGES.size() < MAX_CHALLENGES) {
+                CHALLENGES.putIfAbsent(baseUri, challenge);
+            }
+        }
+        return challenge;
+    }
+
+}
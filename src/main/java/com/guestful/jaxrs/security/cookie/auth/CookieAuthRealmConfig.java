@@ -15,34 +15,103 @@
  */
 package com.guestful.jaxrs.security.cookie.auth;
 
+import java.util.*;
+import java.util.logging.Logger;
+
 /**
+ * Settings of a realm. They are compiled into an immutable {@link CookieAuthRealm} when added to {@link CookieAuthRealmConfigs}:
+ * changes made afterwards are only seen once the config is added (or reloaded) again, and are logged as a warning until then.
+ * <p>
  * date 2014-05-26
  *
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 public class CookieAuthRealmConfig {
 
+    private static final Logger LOGGER = Logger.getLogger(CookieAuthRealmConfig.class.getName());
+
     private int cookieMaxAge = 60;
     private String realName;
     private String cookieName;
     private String cookiePath;
     private String cookieDomain;
-    private String encryptionKey;
+    private int activeKeyVersion;
+    private final Map<Integer, String> encryptionKeys = new TreeMap<>(Collections.reverseOrder());
+    private int badTokenCacheSize = 4096;
+    private CookieRefreshPolicy refreshPolicy = CookieRefreshPolicy.always();
+    private TokenCipher.Factory tokenCipher = TokenCipher.xor();
+    private TokenFormat tokenFormat = TokenFormat.LEGACY;
+    private int issueTimeBucket;
+    private int setCookieCacheSize = 1024;
+    private double rateLimit;
+    private int rateLimitBurst = 1;
+    private int rateLimiterSize = 100000;
+    private final Set<String> preMatchingPaths = new LinkedHashSet<>();
+    private final Set<String> hosts = new LinkedHashSet<>();
+    private boolean abortRejections;
+    private volatile boolean compiled;
+
+    void compiled() {
+        compiled = true;
+    }
+
+    private void changed() {
+        if (compiled) {
+            compiled = false;
+            LOGGER.warning("Settings of realm " + realName + " changed after being added: add or reload the config again to apply them");
+        }
+    }
 
     public String getEncryptionKey() {
-        return encryptionKey;
+        return encryptionKeys.get(activeKeyVersion);
     }
 
+    /**
+     * Sets the key of the active key version
+     */
     public CookieAuthRealmConfig setEncryptionKey(String encryptionKey) {
-        this.encryptionKey = encryptionKey;
+        return addEncryptionKey(activeKeyVersion, encryptionKey);
+    }
+
+    /**
+     * Adds a versioned key to the keyring of this realm. Tokens issued with any key of the keyring are accepted,
+     * but new tokens are only issued with the key of the active version.
+     */
+    public CookieAuthRealmConfig addEncryptionKey(int version, String encryptionKey) {
+        changed();
+        if (version < 0) throw new IllegalArgumentException("Bad key version: " + version);
+        if (encryptionKey == null) throw new NullPointerException();
+        encryptionKeys.put(version, encryptionKey);
+        return this;
+    }
+
+    public CookieAuthRealmConfig removeEncryptionKey(int version) {
+        changed();
+        encryptionKeys.remove(version);
         return this;
     }
 
+    public int getActiveKeyVersion() {
+        return activeKeyVersion;
+    }
+
+    public CookieAuthRealmConfig setActiveKeyVersion(int activeKeyVersion) {
+        changed();
+        if (activeKeyVersion < 0) throw new IllegalArgumentException("Bad key version: " + activeKeyVersion);
+        this.activeKeyVersion = activeKeyVersion;
+        return this;
+    }
+
+    Map<Integer, String> getEncryptionKeys() {
+        return encryptionKeys;
+    }
+
     public int getCookieMaxAge() {
         return cookieMaxAge;
     }
 
     public CookieAuthRealmConfig setCookieMaxAge(int cookieMaxAge) {
+        changed();
         this.cookieMaxAge = cookieMaxAge;
         return this;
     }
@@ -52,6 +121,7 @@ public class CookieAuthRealmConfig {
     }
 
     public CookieAuthRealmConfig setRealName(String realName) {
+        changed();
         this.realName = realName;
         return this;
     }
@@ -61,6 +131,7 @@ public class CookieAuthRealmConfig {
     }
 
     public CookieAuthRealmConfig setCookieName(String cookieName) {
+        changed();
         this.cookieName = cookieName;
         return this;
     }
@@ -70,17 +141,205 @@ public class CookieAuthRealmConfig {
     }
 
     public CookieAuthRealmConfig setCookiePath(String cookiePath) {
+        changed();
         this.cookiePath = cookiePath;
         return this;
     }
 
+    public int getBadTokenCacheSize() {
+        return badTokenCacheSize;
+    }
+
+    /**
+     * Number of recently seen bad token values remembered to reject them quickly. 0 to disable.
+     */
+    public CookieAuthRealmConfig setBadTokenCacheSize(int badTokenCacheSize) {
+        changed();
+        if (badTokenCacheSize < 0) throw new IllegalArgumentException("Bad size: " + badTokenCacheSize);
+        this.badTokenCacheSize = badTokenCacheSize;
+        return this;
+    }
+
+    public int getIssueTimeBucket() {
+        return issueTimeBucket;
+    }
+
+    /**
+     * Rounds the issue time of new tokens down to a multiple of this number of seconds, so that the tokens issued to a
+     * principal within a bucket are identical and their Set-Cookie header can be cached. 0 (default) keeps the
+     * millisecond issue time. Cookies then expire up to one bucket earlier.
+     */
+    public CookieAuthRealmConfig setIssueTimeBucket(int issueTimeBucket) {
+        changed();
+        if (issueTimeBucket < 0) throw new IllegalArgumentException("Bad bucket: " + issueTimeBucket);
+        this.issueTimeBucket = issueTimeBucket;
+        return this;
+    }
+
+    public int getSetCookieCacheSize() {
+        return setCookieCacheSize;
+    }
+
+    /**
+     * Number of rendered Set-Cookie headers remembered when issue times are bucketed. 0 to disable.
+     */
+    public CookieAuthRealmConfig setSetCookieCacheSize(int setCookieCacheSize) {
+        changed();
+        if (setCookieCacheSize < 0) throw new IllegalArgumentException("Bad size: " + setCookieCacheSize);
+        this.setCookieCacheSize = setCookieCacheSize;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Limits the requests of each authenticated principal to this number per second, on average. Requests over the limit
+     * are rejected with a 429 status and a Retry-After header. 0 (default) to disable.
+     */
+    public CookieAuthRealmConfig setRateLimit(double rateLimit) {
+        changed();
+        if (rateLimit < 0) throw new IllegalArgumentException("Bad rate: " + rateLimit);
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * Number of requests a principal can send at once, above the rate limit. 1 by default.
+     */
+    public CookieAuthRealmConfig setRateLimitBurst(int rateLimitBurst) {
+        changed();
+        if (rateLimitBurst < 1) throw new IllegalArgumentException("Bad burst: " + rateLimitBurst);
+        this.rateLimitBurst = rateLimitBurst;
+        return this;
+    }
+
+    public int getRateLimiterSize() {
+        return rateLimiterSize;
+    }
+
+    /**
+     * Maximum number of principals tracked by the rate limiter at once. 100000 by default.
+     */
+    public CookieAuthRealmConfig setRateLimiterSize(int rateLimiterSize) {
+        changed();
+        if (rateLimiterSize < 1) throw new IllegalArgumentException("Bad size: " + rateLimiterSize);
+        this.rateLimiterSize = rateLimiterSize;
+        return this;
+    }
+
+    public Set<String> getPreMatchingPaths() {
+        return Collections.unmodifiableSet(preMatchingPaths);
+    }
+
+    /**
+     * Rejects the requests of which path (relative to the application) starts with this prefix and which do not have
+     * a valid token of this realm, before the resource is even matched. Only use it for paths of which all resources
+     * require an authentication with this realm: optional accesses would be rejected too.
+     */
+    public CookieAuthRealmConfig addPreMatchingPath(String pathPrefix) {
+        changed();
+        if (pathPrefix == null) throw new NullPointerException();
+        preMatchingPaths.add(pathPrefix);
+        return this;
+    }
+
+    public CookieAuthRealmConfig removePreMatchingPath(String pathPrefix) {
+        changed();
+        preMatchingPaths.remove(pathPrefix);
+        return this;
+    }
+
+    public Set<String> getHosts() {
+        return Collections.unmodifiableSet(hosts);
+    }
+
+    /**
+     * Selects this realm for the requests to this domain, or its sub-domains, on resources annotated with
+     * <code>@CookieAuth(realm = CookieAuth.BY_HOST)</code>. The most specific domain wins, <code>*</code> matches any host.
+     */
+    public CookieAuthRealmConfig addHost(String domain) {
+        changed();
+        if (domain == null) throw new NullPointerException();
+        hosts.add(domain);
+        return this;
+    }
+
+    public CookieAuthRealmConfig removeHost(String domain) {
+        changed();
+        hosts.remove(domain);
+        return this;
+    }
+
+    public boolean isAbortRejections() {
+        return abortRejections;
+    }
+
+    /**
+     * Rejects unauthorized requests by aborting them with a 401 response instead of throwing a {@link javax.ws.rs.NotAuthorizedException}:
+     * no exception is created, but exception mappers are not called either. False by default.
+     */
+    public CookieAuthRealmConfig setAbortRejections(boolean abortRejections) {
+        changed();
+        this.abortRejections = abortRejections;
+        return this;
+    }
+
+    public CookieRefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    public CookieAuthRealmConfig setRefreshPolicy(CookieRefreshPolicy refreshPolicy) {
+        changed();
+        if (refreshPolicy == null) throw new NullPointerException();
+        this.refreshPolicy = refreshPolicy;
+        return this;
+    }
+
     public String getCookieDomain() {
         return cookieDomain;
     }
 
     public CookieAuthRealmConfig setCookieDomain(String cookieDomain) {
+        changed();
         this.cookieDomain = cookieDomain;
         return this;
     }
 
+    public TokenCipher.Factory getTokenCipher() {
+        return tokenCipher;
+    }
+
+    /**
+     * Sets the cipher protecting the tokens of this realm, XOR by default. All the keys of the realm are used with this cipher,
+     * so switching cipher invalidates the tokens already issued.
+     */
+    public CookieAuthRealmConfig setTokenCipher(TokenCipher.Factory tokenCipher) {
+        changed();
+        if (tokenCipher == null) throw new NullPointerException();
+        this.tokenCipher = tokenCipher;
+        return this;
+    }
+
+    public TokenFormat getTokenFormat() {
+        return tokenFormat;
+    }
+
+    /**
+     * Sets the format of the tokens issued, {@link TokenFormat#LEGACY} by default. Tokens of both formats are accepted,
+     * so the format can be switched without logging anybody out. {@link TokenFormat#V1} requires an authenticated
+     * {@link #setTokenCipher(TokenCipher.Factory) token cipher}, so that its claims cannot be forged.
+     */
+    public CookieAuthRealmConfig setTokenFormat(TokenFormat tokenFormat) {
+        changed();
+        if (tokenFormat == null) throw new NullPointerException();
+        this.tokenFormat = tokenFormat;
+        return this;
+    }
+
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads realms configurations from a JSON or properties file, and reloads them when the file changes.
+ * <p>
+ * JSON: <code>{"realms": [{"name": "my-realm", "cookieName": "auth", "cookieMaxAge": 3600, "activeKeyVersion": 2, "encryptionKeys": {"1": "...", "2": "..."}, "refresh": "50%", "cipher": "aes-gcm"}]}</code>
+ * <br>
+ * Properties: <code>realm.my-realm.cookieName=auth</code>, <code>realm.my-realm.encryptionKey.2=...</code>
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CookieAuthRealmConfigFile implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CookieAuthRealmConfigFile.class.getName());
+
+    private final Path file;
+    private final CookieAuthRealmConfigs configs;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private CookieAuthRealmConfigFile(Path file, CookieAuthRealmConfigs configs) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.configs = configs;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "cookie-auth-config-" + this.file.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Loads the file into the configs, then reloads them each time the file changes.
+     * A file that cannot be read is logged and the current realms are kept.
+     */
+    public static CookieAuthRealmConfigFile watch(Path file, CookieAuthRealmConfigs configs) throws IOException {
+        configs.reload(read(file));
+        CookieAuthRealmConfigFile watcher = new CookieAuthRealmConfigFile(file, configs);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    public static List<CookieAuthRealmConfig> read(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return file.getFileName().toString().endsWith(".properties") ? readProperties(is) : readJson(is);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (file.getFileName().equals(event.context())) {
+                    changed = true;
+                }
+            }
+            key.reset();
+            if (changed) {
+                try {
+                    configs.reload(read(file));
+                    LOGGER.log(Level.INFO, "Reloaded realms from " + file);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unable to reload realms from " + file + ": keeping the current ones. " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static List<CookieAuthRealmConfig> readJson(InputStream is) {
+        List<CookieAuthRealmConfig> list = new ArrayList<>();
+        try (JsonReader reader = Json.createReader(is)) {
+            for (JsonValue value : reader.readObject().getJsonArray("realms")) {
+                JsonObject realm = (JsonObject) value;
+                CookieAuthRealmConfig config = new CookieAuthRealmConfig()
+                    .setRealName(realm.getString("name"))
+                    .setCookieName(realm.getString("cookieName"))
+                    .setCookiePath(realm.getString("cookiePath", null))
+                    .setCookieDomain(realm.getString("cookieDomain", null))
+                    .setCookieMaxAge(realm.getInt("cookieMaxAge", 60))
+                    .setActiveKeyVersion(realm.getInt("activeKeyVersion", 0))
+                    .setBadTokenCacheSize(realm.getInt("badTokenCacheSize", 4096))
+                    .setIssueTimeBucket(realm.getInt("issueTimeBucket", 0))
+                    .setSetCookieCacheSize(realm.getInt("setCookieCacheSize", 1024))
+                    .setRateLimit(realm.containsKey("rateLimit") ? realm.getJsonNumber("rateLimit").doubleValue() : 0)
+                    .setRateLimitBurst(realm.getInt("rateLimitBurst", 1))
+                    .setRateLimiterSize(realm.getInt("rateLimiterSize", 100000))
+                    .setAbortRejections(realm.getBoolean("abortRejections", false))
+                    .setRefreshPolicy(refreshPolicy(realm.getString("refresh", "always")))
+                    .setTokenCipher(TokenCipher.named(realm.getString("cipher", "xor")))
+                    .setTokenFormat(TokenFormat.valueOf(realm.getString("tokenFormat", "LEGACY")));
+                JsonArray paths = realm.getJsonArray("preMatchingPaths");
+                if (paths != null) {
+                    for (int i = 0; i < paths.size(); i++) {
+                        config.addPreMatchingPath(paths.getString(i));
+                    }
+                }
+                JsonArray hosts = realm.getJsonArray("hosts");
+                if (hosts != null) {
+                    for (int i = 0; i < hosts.size(); i++) {
+                        config.addHost(hosts.getString(i));
+                    }
+                }
+                JsonObject keys = realm.getJsonObject("encryptionKeys");
+                if (keys != null) {
+                    for (String version : keys.keySet()) {
+                        config.addEncryptionKey(Integer.parseInt(version), keys.getString(version));
+                    }
+                }
+                list.add(config);
+            }
+        }
+        return list;
+    }
+
+    private static List<CookieAuthRealmConfig> readProperties(InputStream is) throws IOException {
+        Properties properties = new Properties();
+        properties.load(is);
+        Map<String, CookieAuthRealmConfig> realms = new LinkedHashMap<>();
+        for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+            if (!name.startsWith("realm.")) continue;
+            int dot = name.indexOf('.', 6);
+            if (dot == -1) throw new IllegalArgumentException("Bad property: " + name);
+            String realmName = name.substring(6, dot);
+            String key = name.substring(dot + 1);
+            String value = properties.getProperty(name).trim();
+            CookieAuthRealmConfig config = realms.computeIfAbsent(realmName, n -> new CookieAuthRealmConfig().setRealName(n));
+            if (key.startsWith("encryptionKey.")) {
+                config.addEncryptionKey(Integer.parseInt(key.substring(14)), value);
+            } else {
+                switch (key) {
+                    case "cookieName":
+                        config.setCookieName(value);
+                        break;
+                    case "cookiePath":
+                        config.setCookiePath(value);
+                        break;
+                    case "cookieDomain":
+                        config.setCookieDomain(value);
+                        break;
+                    case "cookieMaxAge":
+                        config.setCookieMaxAge(Integer.parseInt(value));
+                        break;
+                    case "activeKeyVersion":
+                        config.setActiveKeyVersion(Integer.parseInt(value));
+                        break;
+                    case "badTokenCacheSize":
+                        config.setBadTokenCacheSize(Integer.parseInt(value));
+                        break;
+                    case "issueTimeBucket":
+                        config.setIssueTimeBucket(Integer.parseInt(value));
+                        break;
+                    case "setCookieCacheSize":
+                        config.setSetCookieCacheSize(Integer.parseInt(value));
+                        break;
+                    case "rateLimit":
+                        config.setRateLimit(Double.parseDouble(value));
+                        break;
+                    case "rateLimitBurst":
+                        config.setRateLimitBurst(Integer.parseInt(value));
+                        break;
+                    case "rateLimiterSize":
+                        config.setRateLimiterSize(Integer.parseInt(value));
+                        break;
+                    case "hosts":
+                        for (String host : value.split(",")) {
+                            if (!host.trim().isEmpty()) {
+                                config.addHost(host.trim());
+                            }
+                        }
+                        break;
+                    case "abortRejections":
+                        config.setAbortRejections(Boolean.parseBoolean(value));
+                        break;
+                    case "preMatchingPaths":
+                        for (String path : value.split(",")) {
+                            if (!path.trim().isEmpty()) {
+                                config.addPreMatchingPath(path.trim());
+                            }
+                        }
+                        break;
+                    case "refresh":
+                        config.setRefreshPolicy(refreshPolicy(value));
+                        break;
+                    case "cipher":
+                        config.setTokenCipher(TokenCipher.named(value));
+                        break;
+                    case "tokenFormat":
+                        config.setTokenFormat(TokenFormat.valueOf(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Bad property: " + name);
+                }
+            }
+        }
+        return new ArrayList<>(realms.values());
+    }
+
+    static CookieRefreshPolicy refreshPolicy(String value) {
+        switch (value) {
+            case "always":
+                return CookieRefreshPolicy.always();
+            case "never":
+                return CookieRefreshPolicy.never();
+            default:
+                if (value.endsWith("%")) {
+                    return CookieRefreshPolicy.olderThan(Integer.parseInt(value.substring(0, value.length() - 1)));
+                }
+                throw new IllegalArgumentException("Bad refresh policy: " + value);
+        }
+    }
+}
@@ -15,24 +15,223 @@
  */
 package com.guestful.jaxrs.security.cookie.auth;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
+ * Realms configurations. Each added config is compiled into an immutable {@link CookieAuthRealm}, published
+ * through a copy-on-write map: filters read the current realms without locking while they are reloaded.
+ *
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 public class CookieAuthRealmConfigs {
 
-    private final Map<String, CookieAuthRealmConfig> configs = new HashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(CookieAuthRealmConfigs.class.getName());
+
+    // published at once, so that readers never mix realms and lookup structures of different reloads
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private final List<CookieAuthMetricsListener> metricsListeners = new CopyOnWriteArrayList<>();
+    private final List<MBeanServer> mBeanServers = new CopyOnWriteArrayList<>();
+    private final CookieAuthListeners authListeners = new CookieAuthListeners();
+    private volatile boolean abortRejections;
 
     public CookieAuthRealmConfigs add(CookieAuthRealmConfig config) {
-        configs.put(config.getRealName(), config);
+        publish(Collections.singletonList(config), false);
+        return this;
+    }
+
+    /**
+     * Adds several configs at once, published together: prefer it to {@link #add(CookieAuthRealmConfig)} to load many realms,
+     * such as one per tenant, since each publication copies the realms and rebuilds the lookup structures.
+     */
+    public CookieAuthRealmConfigs addAll(Collection<CookieAuthRealmConfig> configs) {
+        publish(configs, false);
+        return this;
+    }
+
+    /**
+     * Atomically replaces the realms by the given ones. Nothing changes if one of them cannot be compiled.
+     * Realms not listed are kept, since filters may still be bound to them.
+     */
+    public void reload(Collection<CookieAuthRealmConfig> configs) {
+        publish(configs, true);
+    }
+
+    public boolean isAbortRejections() {
+        return abortRejections;
+    }
+
+    /**
+     * Like {@link CookieAuthRealmConfig#setAbortRejections(boolean)}, for the requests no realm serves:
+     * requests to <code>@CookieAuth(realm = CookieAuth.BY_HOST)</code> resources on a host of no realm. False by default.
+     */
+    public CookieAuthRealmConfigs setAbortRejections(boolean abortRejections) {
+        this.abortRejections = abortRejections;
         return this;
     }
 
     public CookieAuthRealmConfig getConfig(String realmName) {
-        CookieAuthRealmConfig config = configs.get(realmName);
+        CookieAuthRealmConfig config = snapshot.configs.get(realmName);
         if (config == null) throw new IllegalArgumentException("Cookie Realm Config '" + realmName + "' not found.");
         return config;
     }
+
+    public CookieAuthRealm getRealm(String realmName) {
+        CookieAuthRealm realm = snapshot.realms.get(realmName);
+        if (realm == null) throw new IllegalArgumentException("Cookie Realm Config '" + realmName + "' not found.");
+        return realm;
+    }
+
+    public Collection<CookieAuthRealm> getRealms() {
+        return snapshot.realms.values();
+    }
+
+    /**
+     * @param host value of a Host header
+     * @return the realm of the most specific domain of this host, or null
+     */
+    public CookieAuthRealm getRealmByHost(String host) {
+        HostSuffixTrie<CookieAuthRealm> trie = snapshot.hosts;
+        return trie.isEmpty() || host == null ? null : trie.match(host);
+    }
+
+    /**
+     * @return the realm of which pre-matching path prefixes match this path, or null
+     */
+    CookieAuthRealm preMatch(CharSequence path) {
+        PathPrefixTrie<CookieAuthRealm> trie = snapshot.preMatchingPaths;
+        return trie.isEmpty() ? null : trie.match(path);
+    }
+
+    public CookieAuthRealmConfigs addMetricsListener(CookieAuthMetricsListener listener) {
+        synchronized (this) {
+            metricsListeners.add(listener);
+            for (CookieAuthRealm realm : snapshot.realms.values()) {
+                realm.getMetrics().addListener(listener);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a listener of the authentication events (logins, logouts, expired tokens, denials and decrypt failures) of all realms
+     */
+    public CookieAuthRealmConfigs addAuthListener(CookieAuthListener listener) {
+        authListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Registers the metrics of each realm, current and future, as an MBean named com.guestful.jaxrs.security.cookie.auth:type=CookieAuthRealm,name=[realm]
+     */
+    public synchronized void registerMBeans(MBeanServer server) throws JMException {
+        for (CookieAuthRealm realm : snapshot.realms.values()) {
+            server.registerMBean(realm.getMetrics(), objectName(realm.getName()));
+        }
+        mBeanServers.add(server);
+    }
+
+    public synchronized void unregisterMBeans(MBeanServer server) throws JMException {
+        mBeanServers.remove(server);
+        for (CookieAuthRealm realm : snapshot.realms.values()) {
+            ObjectName name = objectName(realm.getName());
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+    }
+
+    static ObjectName objectName(String realmName) throws JMException {
+        return new ObjectName(CookieAuthRealmConfigs.class.getPackage().getName() + ":type=CookieAuthRealm,name=" + ObjectName.quote(realmName));
+    }
+
+    private synchronized void publish(Collection<CookieAuthRealmConfig> added, boolean reload) {
+        Snapshot current = snapshot;
+        Map<String, CookieAuthRealmConfig> configs = new HashMap<>(current.configs);
+        Map<String, CookieAuthRealm> realms = new HashMap<>(current.realms);
+        List<CookieAuthRealm> created = new ArrayList<>();
+        // compile everything before publishing anything
+        for (CookieAuthRealmConfig config : added) {
+            CookieAuthRealm previous = realms.get(config.getRealName());
+            CookieAuthRealm realm = CookieAuthRealm.compile(config, previous, authListeners);
+            configs.put(realm.getName(), config);
+            realms.put(realm.getName(), realm);
+            if (previous == null) {
+                created.add(realm);
+            }
+        }
+        if (reload) {
+            Set<String> names = new HashSet<>();
+            for (CookieAuthRealmConfig config : added) {
+                names.add(config.getRealName());
+            }
+            for (String name : current.realms.keySet()) {
+                if (!names.contains(name)) {
+                    LOGGER.log(Level.WARNING, "Realm " + name + " is missing from the reloaded configuration: keeping it.");
+                }
+            }
+        }
+        Map<String, CookieAuthRealm> paths = new HashMap<>();
+        for (CookieAuthRealm realm : realms.values()) {
+            for (String path : configs.get(realm.getName()).getPreMatchingPaths()) {
+                CookieAuthRealm other = paths.put(path, realm);
+                if (other != null) {
+                    throw new IllegalArgumentException("Pre-matching path " + path + " used by realms " + other.getName() + " and " + realm.getName());
+                }
+            }
+        }
+        PathPrefixTrie<CookieAuthRealm> preMatchingPaths = PathPrefixTrie.compile(paths);
+        Map<String, CookieAuthRealm> domains = new HashMap<>();
+        for (CookieAuthRealm realm : realms.values()) {
+            for (String domain : configs.get(realm.getName()).getHosts()) {
+                CookieAuthRealm other = domains.put(domain, realm);
+                if (other != null) {
+                    throw new IllegalArgumentException("Host " + domain + " used by realms " + other.getName() + " and " + realm.getName());
+                }
+            }
+        }
+        HostSuffixTrie<CookieAuthRealm> hosts = HostSuffixTrie.compile(domains);
+        // all checks passed: changes made to the configs from now on are not seen
+        for (CookieAuthRealmConfig config : added) {
+            config.compiled();
+        }
+        for (CookieAuthRealm realm : realms.values()) {
+            realm.getRevocations().setMaxAge(realm.getCookieMaxAge());
+        }
+        for (CookieAuthRealm realm : created) {
+            for (CookieAuthMetricsListener listener : metricsListeners) {
+                realm.getMetrics().addListener(listener);
+            }
+            for (MBeanServer server : mBeanServers) {
+                try {
+                    server.registerMBean(realm.getMetrics(), objectName(realm.getName()));
+                } catch (JMException e) {
+                    LOGGER.log(Level.WARNING, "Unable to register MBean of realm " + realm.getName() + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        this.snapshot = new Snapshot(Collections.unmodifiableMap(configs), Collections.unmodifiableMap(realms), preMatchingPaths, hosts);
+    }
+
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), PathPrefixTrie.empty(), HostSuffixTrie.empty());
+
+        final Map<String, CookieAuthRealmConfig> configs;
+        final Map<String, CookieAuthRealm> realms;
+        final PathPrefixTrie<CookieAuthRealm> preMatchingPaths;
+        final HostSuffixTrie<CookieAuthRealm> hosts;
+
+        Snapshot(Map<String, CookieAuthRealmConfig> configs, Map<String, CookieAuthRealm> realms, PathPrefixTrie<CookieAuthRealm> preMatchingPaths, HostSuffixTrie<CookieAuthRealm> hosts) {
+            this.configs = configs;
+            this.realms = realms;
+            this.preMatchingPaths = preMatchingPaths;
+            this.hosts = hosts;
+        }
+    }
 }
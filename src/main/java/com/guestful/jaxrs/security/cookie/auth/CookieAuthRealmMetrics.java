@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and authorization latencies of a realm, recorded by the filter without locking,
+ * and forwarded to the registered {@link CookieAuthMetricsListener}s.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieAuthRealmMetrics implements CookieAuthRealmMetricsMBean {
+
+    private static final CookieAuthMetricsListener[] NO_LISTENERS = new CookieAuthMetricsListener[0];
+
+    private final String realm;
+    private final LongAdder cookiesPresent = new LongAdder();
+    private final LongAdder cookiesMissing = new LongAdder();
+    private final LongAdder decryptFailures = new LongAdder();
+    private final LongAdder expiredTokens = new LongAdder();
+    private final LongAdder authorizationDenials = new LongAdder();
+    private final LatencyHistogram authorizationTimes = new LatencyHistogram();
+    private final LongAdder cookiesIssued = new LongAdder();
+    private final LongAdder cookiesDeleted = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private volatile CookieAuthMetricsListener[] listeners = NO_LISTENERS;
+
+    CookieAuthRealmMetrics(String realm) {
+        this.realm = realm;
+    }
+
+    public synchronized CookieAuthRealmMetrics addListener(CookieAuthMetricsListener listener) {
+        if (listener == null) throw new NullPointerException();
+        CookieAuthMetricsListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+        copy[listeners.length] = listener;
+        listeners = copy;
+        return this;
+    }
+
+    public synchronized CookieAuthRealmMetrics removeListener(CookieAuthMetricsListener listener) {
+        listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(CookieAuthMetricsListener[]::new);
+        return this;
+    }
+
+    @Override
+    public String getRealm() {
+        return realm;
+    }
+
+    @Override
+    public long getCookiesPresent() {
+        return cookiesPresent.sum();
+    }
+
+    @Override
+    public long getCookiesMissing() {
+        return cookiesMissing.sum();
+    }
+
+    @Override
+    public long getDecryptFailures() {
+        return decryptFailures.sum();
+    }
+
+    @Override
+    public long getExpiredTokens() {
+        return expiredTokens.sum();
+    }
+
+    @Override
+    public long getAuthorizations() {
+        return authorizationTimes.getCount();
+    }
+
+    @Override
+    public long getAuthorizationDenials() {
+        return authorizationDenials.sum();
+    }
+
+    @Override
+    public double getAuthorizationMeanTime() {
+        return authorizationTimes.getMean() / 1000;
+    }
+
+    @Override
+    public long getAuthorizationMaxTime() {
+        return TimeUnit.NANOSECONDS.toMicros(authorizationTimes.getMax());
+    }
+
+    @Override
+    public long getAuthorizationP50Time() {
+        return TimeUnit.NANOSECONDS.toMicros(authorizationTimes.getPercentile(0.5));
+    }
+
+    @Override
+    public long getAuthorizationP99Time() {
+        return TimeUnit.NANOSECONDS.toMicros(authorizationTimes.getPercentile(0.99));
+    }
+
+    @Override
+    public long getAuthorizationP999Time() {
+        return TimeUnit.NANOSECONDS.toMicros(authorizationTimes.getPercentile(0.999));
+    }
+
+    @Override
+    public long getCookiesIssued() {
+        return cookiesIssued.sum();
+    }
+
+    @Override
+    public long getCookiesDeleted() {
+        return cookiesDeleted.sum();
+    }
+
+    @Override
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public void reset() {
+        cookiesPresent.reset();
+        cookiesMissing.reset();
+        decryptFailures.reset();
+        expiredTokens.reset();
+        authorizationDenials.reset();
+        authorizationTimes.reset();
+        cookiesIssued.reset();
+        cookiesDeleted.reset();
+        rateLimited.reset();
+    }
+
+    void cookiePresent() {
+        cookiesPresent.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onCookiePresent(getRealm());
+        }
+    }
+
+    void cookieMissing() {
+        cookiesMissing.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onCookieMissing(getRealm());
+        }
+    }
+
+    void decryptFailure() {
+        decryptFailures.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onDecryptFailure(getRealm());
+        }
+    }
+
+    void expiredToken() {
+        expiredTokens.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onExpiredToken(getRealm());
+        }
+    }
+
+    void authorization(boolean authorized, long durationNanos) {
+        authorizationTimes.record(durationNanos);
+        if (!authorized) {
+            authorizationDenials.increment();
+        }
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onAuthorization(getRealm(), authorized, durationNanos);
+        }
+    }
+
+    void cookieIssued() {
+        cookiesIssued.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onCookieIssued(getRealm());
+        }
+    }
+
+    void cookieDeleted() {
+        cookiesDeleted.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onCookieDeleted(getRealm());
+        }
+    }
+
+    void rateLimited() {
+        rateLimited.increment();
+        for (CookieAuthMetricsListener listener : listeners) {
+            listener.onRateLimited(getRealm());
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+/**
+ * JMX view of {@link CookieAuthRealmMetrics}. Durations are in microseconds.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface CookieAuthRealmMetricsMBean {
+
+    String getRealm();
+
+    long getCookiesPresent();
+
+    long getCookiesMissing();
+
+    long getDecryptFailures();
+
+    long getExpiredTokens();
+
+    long getAuthorizations();
+
+    long getAuthorizationDenials();
+
+    double getAuthorizationMeanTime();
+
+    long getAuthorizationMaxTime();
+
+    long getAuthorizationP50Time();
+
+    long getAuthorizationP99Time();
+
+    long getAuthorizationP999Time();
+
+    long getCookiesIssued();
+
+    long getCookiesDeleted();
+
+    long getRateLimited();
+
+    void reset();
+
+}
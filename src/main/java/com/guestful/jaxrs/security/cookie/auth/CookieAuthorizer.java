@@ -22,4 +22,12 @@ import java.security.Principal;
  */
 public interface CookieAuthorizer {
     boolean isAuthorized(Principal principal, CookieAuth cookieAuth);
+
+    /**
+     * Called by the filter with the claims read from the token, so that roles or tenant can be checked
+     * without a lookup. Delegates to {@link #isAuthorized(Principal, CookieAuth)} by default.
+     */
+    default boolean isAuthorized(Principal principal, TokenClaims claims, CookieAuth cookieAuth) {
+        return isAuthorized(principal, cookieAuth);
+    }
 }
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.lang.annotation.*;
+
+/**
+ * Injects the {@link java.security.Principal} (null if anonymous), the {@link CookieSubject} or the {@link TokenClaims}
+ * of the request in a parameter of a {@link CookieAuth} resource method:
+ * <pre>
+ * &#64;GET
+ * &#64;CookieAuth(realm = "my-realm")
+ * public String get(&#64;CookiePrincipal Principal principal) { ... }
+ * </pre>
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@Target({ElementType.PARAMETER, ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CookiePrincipal {
+}
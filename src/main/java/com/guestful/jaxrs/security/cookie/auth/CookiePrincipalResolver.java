@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.glassfish.hk2.api.Injectee;
+import org.glassfish.hk2.api.InjectionResolver;
+import org.glassfish.hk2.api.ServiceHandle;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.container.ContainerRequestContext;
+import java.security.Principal;
+
+/**
+ * Resolves {@link CookiePrincipal} injection points. The container creates one value factory per resource method
+ * parameter at startup, calling this resolver on each request: the subject is read from the current thread, where the
+ * filter bound it, without any service lookup.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@Singleton
+class CookiePrincipalResolver implements InjectionResolver<CookiePrincipal> {
+
+    private final Provider<ContainerRequestContext> requestContext;
+
+    @Inject
+    CookiePrincipalResolver(Provider<ContainerRequestContext> requestContext) {
+        this.requestContext = requestContext;
+    }
+
+    @Override
+    public Object resolve(Injectee injectee, ServiceHandle<?> root) {
+        CookieSubject cookieSubject = CookieSubjects.get();
+        if (cookieSubject == null) {
+            cookieSubject = (CookieSubject) requestContext.get().getProperty(CookieSubject.class.getName());
+        }
+        if (cookieSubject == null) {
+            throw new IllegalStateException("No CookieSubject bound to current request: missing @CookieAuth on " + injectee.getParent());
+        }
+        if (injectee.getRequiredType() == Principal.class) {
+            return cookieSubject.getPrincipal();
+        }
+        if (injectee.getRequiredType() == CookieSubject.class) {
+            return cookieSubject;
+        }
+        if (injectee.getRequiredType() == TokenClaims.class) {
+            return cookieSubject.getClaims();
+        }
+        throw new IllegalStateException("@CookiePrincipal cannot inject " + injectee.getRequiredType() + " in " + injectee.getParent());
+    }
+
+    @Override
+    public boolean isConstructorParameterIndicator() {
+        return false;
+    }
+
+    @Override
+    public boolean isMethodParameterIndicator() {
+        return true;
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+/**
+ * Decides if the response filter has to issue a new cookie for a valid token received with the request.
+ * A new cookie is always issued when the subject logs in, or when the token was issued with a key
+ * that is not the active one anymore.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface CookieRefreshPolicy {
+
+    /**
+     * @param issuedAt  issue time of the token received, in milliseconds
+     * @param now       current time, in milliseconds
+     * @param maxAgeSec max age of the cookie of the realm, in seconds
+     */
+    boolean shouldRefresh(long issuedAt, long now, int maxAgeSec);
+
+    /**
+     * Issue a new cookie on every response (sliding expiration)
+     */
+    static CookieRefreshPolicy always() {
+        return (issuedAt, now, maxAgeSec) -> true;
+    }
+
+    /**
+     * Never issue a new cookie for a valid token: the cookie expires maxAge after the login
+     */
+    static CookieRefreshPolicy never() {
+        return (issuedAt, now, maxAgeSec) -> false;
+    }
+
+    /**
+     * Issue a new cookie once the token is older than the given percentage of the max age
+     */
+    static CookieRefreshPolicy olderThan(int percentOfMaxAge) {
+        if (percentOfMaxAge < 0 || percentOfMaxAge > 100) throw new IllegalArgumentException("Bad percentage: " + percentOfMaxAge);
+        return (issuedAt, now, maxAgeSec) -> (now - issuedAt) * 100 >= maxAgeSec * 1000L * percentOfMaxAge;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import java.util.List;
+
+/**
+ * Finds the value of one cookie in the raw Cookie headers of a request, without building the cookie map of the
+ * container: only the value found is allocated. Pairs are separated by ';' or ',' like the container does,
+ * attributes ($Version, $Path...) are skipped and quoted values are unquoted. The first pair with the name wins.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class CookieScanner {
+
+    private CookieScanner() {
+    }
+
+    /**
+     * @return the value of the cookie, or null if the request does not have it
+     */
+    static String find(ContainerRequestContext requestContext, String name) {
+        List<String> headers = requestContext.getHeaders().get(HttpHeaders.COOKIE);
+        if (headers == null) {
+            return null;
+        }
+        for (int i = 0; i < headers.size(); i++) {
+            String value = find(headers.get(i), name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    static String find(String header, String name) {
+        int len = header.length();
+        int nameLen = name.length();
+        int i = 0;
+        while (i < len) {
+            // start of a pair
+            while (i < len && isSpace(header.charAt(i))) i++;
+            int eq = -1;
+            int end = i;
+            while (end < len) {
+                char c = header.charAt(end);
+                if (c == ';' || c == ',') break;
+                if (c == '"') {
+                    // a separator may be quoted
+                    end = header.indexOf('"', end + 1);
+                    if (end < 0) end = len;
+                } else if (c == '=' && eq < 0) {
+                    eq = end;
+                }
+                end++;
+            }
+            if (eq > 0) {
+                int nameEnd = eq;
+                while (nameEnd > i && isSpace(header.charAt(nameEnd - 1))) nameEnd--;
+                if (nameEnd - i == nameLen && header.regionMatches(i, name, 0, nameLen)) {
+                    int start = eq + 1;
+                    int stop = Math.min(end, len);
+                    while (start < stop && isSpace(header.charAt(start))) start++;
+                    while (stop > start && isSpace(header.charAt(stop - 1))) stop--;
+                    if (stop - start >= 2 && header.charAt(start) == '"' && header.charAt(stop - 1) == '"') {
+                        start++;
+                        stop--;
+                    }
+                    return header.substring(start, stop);
+                }
+            }
+            i = end + 1;
+        }
+        return null;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+}
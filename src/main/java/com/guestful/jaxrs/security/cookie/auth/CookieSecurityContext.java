@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.ws.rs.core.SecurityContext;
+import java.security.Principal;
+
+/**
+ * SecurityContext installed by the filter: the user principal is the one of the {@link CookieSubject}, following its
+ * login and logout. Roles are application specific (see {@link TokenClaims}): {@link #isUserInRole(String)} is false.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class CookieSecurityContext implements SecurityContext {
+
+    static final String AUTHENTICATION_SCHEME = "GBASICAUTH";
+
+    private final CookieSubject cookieSubject;
+    private final boolean secure;
+
+    CookieSecurityContext(CookieSubject cookieSubject, SecurityContext previous) {
+        this.cookieSubject = cookieSubject;
+        this.secure = previous != null && previous.isSecure();
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return cookieSubject.getPrincipal();
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    @Override
+    public boolean isSecure() {
+        return secure;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+        return cookieSubject.getPrincipal() == null ? null : AUTHENTICATION_SCHEME;
+    }
+
+}
@@ -16,44 +16,121 @@
 package com.guestful.jaxrs.security.cookie.auth;
 
 import java.security.Principal;
+import java.util.function.Supplier;
 
 /**
+ * Can be used and modified by the tasks of asynchronous resources (see {@link CookieSubjects}): writes are synchronized
+ * and reads see the last state.
+ *
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 public class CookieSubject {
 
-    private Principal principal;
-    private boolean authenticated = false;
+    private volatile Principal principal;
+    private volatile TokenClaims claims = TokenClaims.NONE;
+    // token received with the request, if valid
+    volatile CookieAuthFeature.StoredPrincipal storedPrincipal;
+    // value of the realm cookie received with the request, valid or not
+    volatile String requestToken;
+    // realm of the filter which created this subject, to report logins and logouts
+    volatile CookieAuthRealm realm;
+    // pending resolution of the token, for lazy subjects
+    private volatile Supplier<CookieAuthFeature.StoredPrincipal> resolver;
 
     public CookieSubject(Principal principal) {
         this.principal = principal;
     }
 
+    CookieSubject(CookieAuthFeature.StoredPrincipal storedPrincipal) {
+        this.principal = storedPrincipal == null ? null : storedPrincipal.principal;
+        this.claims = storedPrincipal == null ? TokenClaims.NONE : storedPrincipal.claims;
+        this.storedPrincipal = storedPrincipal;
+    }
+
+    /**
+     * Subject whose token is only read (and authorized) the first time it is used
+     */
+    static CookieSubject lazy(Supplier<CookieAuthFeature.StoredPrincipal> resolver) {
+        CookieSubject cookieSubject = new CookieSubject((Principal) null);
+        cookieSubject.resolver = resolver;
+        return cookieSubject;
+    }
+
     public boolean isAnonymous() {
+        resolve();
         return principal == null;
     }
 
     public boolean isRemembered() {
-        return principal != null && !authenticated;
+        resolve();
+        return principal != null && !claims.isAuthenticated();
     }
 
     public boolean isAuthenticated() {
-        return principal != null && authenticated;
+        resolve();
+        return principal != null && claims.isAuthenticated();
     }
 
     public Principal getPrincipal() {
+        resolve();
         return principal;
     }
 
-    public void logout() {
+    /**
+     * @return the claims of the token received, or given at login. Only kept in the cookie by realms using {@link TokenFormat#V1}.
+     */
+    public TokenClaims getClaims() {
+        resolve();
+        return claims;
+    }
+
+    public synchronized void logout() {
+        Principal previous = this.principal;
+        this.resolver = null;
         this.principal = null;
-        this.authenticated = false;
+        this.claims = TokenClaims.NONE;
+        CookieAuthRealm realm = this.realm;
+        if (realm != null && previous != null) {
+            realm.getListener().onLogout(realm.getName(), previous);
+        }
     }
 
     public void login(Principal principal) {
+        login(principal, TokenClaims.NONE);
+    }
+
+    public synchronized void login(Principal principal, TokenClaims claims) {
         if (principal == null) throw new NullPointerException();
+        if (claims == null) throw new NullPointerException();
+        this.resolver = null;
         this.principal = principal;
-        this.authenticated = true;
+        this.claims = claims.withAuthenticated(true);
+        CookieAuthRealm realm = this.realm;
+        if (realm != null) {
+            realm.getListener().onLogin(realm.getName(), principal);
+        }
+    }
+
+    /**
+     * @return false if this subject is lazy and was never used
+     */
+    boolean isResolved() {
+        return resolver == null;
+    }
+
+    private void resolve() {
+        if (resolver != null) {
+            synchronized (this) {
+                Supplier<CookieAuthFeature.StoredPrincipal> resolver = this.resolver;
+                if (resolver != null) {
+                    CookieAuthFeature.StoredPrincipal storedPrincipal = resolver.get();
+                    this.storedPrincipal = storedPrincipal;
+                    this.principal = storedPrincipal == null ? null : storedPrincipal.principal;
+                    this.claims = storedPrincipal == null ? TokenClaims.NONE : storedPrincipal.claims;
+                    this.resolver = null;
+                }
+            }
+        }
     }
 
 }
@@ -37,7 +37,11 @@ public class CookieSubjectFactory implements Factory<CookieSubject> {
 
     @Override
     public CookieSubject provide() {
-        CookieSubject cookieSubject = (CookieSubject) requestContext.get().getProperty(CookieSubject.class.getName());
+        // bound to the request thread by the filter, and to the tasks of asynchronous resources, which run outside of the request scope
+        CookieSubject cookieSubject = CookieSubjects.get();
+        if (cookieSubject == null) {
+            cookieSubject = (CookieSubject) requestContext.get().getProperty(CookieSubject.class.getName());
+        }
         if (cookieSubject == null) {
             throw new IllegalStateException("No CookieSubject bound to current request");
         }
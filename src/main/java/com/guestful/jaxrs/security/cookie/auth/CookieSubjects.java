@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Holds the {@link CookieSubject} of the current request, and carries it to the tasks of asynchronous resources.
+ * <p>
+ * The filter binds the subject to the request thread. Tasks wrapped here see the subject of the thread that wrapped them
+ * (or that submitted them, for a wrapped {@link Executor}), can login or logout, and the response filter issues the
+ * cookie of the last state of the subject, even when the response is resumed from another thread.
+ * <p>
+ * <pre>
+ * Executor executor = CookieSubjects.wrap(myExecutor);
+ * CompletableFuture.supplyAsync(() -> CookieSubjects.current().getPrincipal(), executor)
+ *     .thenAcceptAsync(asyncResponse::resume, executor);
+ * </pre>
+ * The subject is kept in a plain ThreadLocal, set and restored around each task, which also works with virtual threads.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CookieSubjects {
+
+    private static final ThreadLocal<CookieSubject> CURRENT = new ThreadLocal<>();
+
+    private CookieSubjects() {
+    }
+
+    /**
+     * @throws IllegalStateException if no subject is bound to the current thread
+     */
+    public static CookieSubject current() {
+        CookieSubject cookieSubject = CURRENT.get();
+        if (cookieSubject == null) {
+            throw new IllegalStateException("No CookieSubject bound to current thread");
+        }
+        return cookieSubject;
+    }
+
+    public static void runWith(CookieSubject cookieSubject, Runnable task) {
+        CookieSubject previous = bind(cookieSubject);
+        try {
+            task.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static <T> T callWith(CookieSubject cookieSubject, Callable<T> task) throws Exception {
+        CookieSubject previous = bind(cookieSubject);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static Runnable wrap(Runnable task) {
+        CookieSubject cookieSubject = current();
+        return () -> runWith(cookieSubject, task);
+    }
+
+    public static <T> Callable<T> wrapCallable(Callable<T> task) {
+        CookieSubject cookieSubject = current();
+        return () -> callWith(cookieSubject, task);
+    }
+
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> task) {
+        CookieSubject cookieSubject = current();
+        return () -> {
+            CookieSubject previous = bind(cookieSubject);
+            try {
+                return task.get();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public static <T, R> Function<T, R> wrapFunction(Function<T, R> task) {
+        CookieSubject cookieSubject = current();
+        return t -> {
+            CookieSubject previous = bind(cookieSubject);
+            try {
+                return task.apply(t);
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * @return an executor running each task with the subject bound to the thread submitting it, if any. To be passed to
+     * the *Async methods of {@link java.util.concurrent.CompletionStage} so that continuations also see the subject.
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> {
+            CookieSubject cookieSubject = CURRENT.get();
+            executor.execute(cookieSubject == null ? task : () -> runWith(cookieSubject, task));
+        };
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor) {
+        return CompletableFuture.supplyAsync(wrapSupplier(task), executor);
+    }
+
+    /**
+     * @return the subject bound to the current thread, or null
+     */
+    static CookieSubject get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the subject previously bound
+     */
+    static CookieSubject bind(CookieSubject cookieSubject) {
+        CookieSubject previous = CURRENT.get();
+        CURRENT.set(cookieSubject);
+        return previous;
+    }
+
+    static void restore(CookieSubject previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    static void unbind(CookieSubject cookieSubject) {
+        if (CURRENT.get() == cookieSubject) {
+            CURRENT.remove();
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Command line tool working on files of cookie values (one per line), streamed and processed in parallel on all cores.
+ * Realms are read with {@link CookieAuthRealmConfigFile}.
+ * <pre>
+ * genkey [-bytes 24]
+ *     prints a new random hex key
+ * verify -config realms.json -realm my-realm -in tokens.txt
+ *     decodes the tokens and reports invalid, expired and remaining lifetime counts, by key version
+ * reencrypt -config realms.json -realm my-realm [-to-config new-realms.json] [-to-realm my-realm] -in tokens.txt -out out.txt
+ *     writes "old new" lines, the new token keeping the principal, claims and issue time of the old one,
+ *     encrypted with the active key of the target realm. Invalid tokens, tokens which cannot be encrypted for the target realm,
+ *     and tokens with claims when the target realm issues {@link TokenFormat#LEGACY} tokens, are written alone.
+ * </pre>
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieTokenTool {
+
+    private static final long[] LIFETIMES = {TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7), TimeUnit.DAYS.toMillis(30)};
+    private static final String[] LIFETIME_NAMES = {"< 1h", "< 1d", "< 7d", "< 30d", ">= 30d"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) throw new IllegalArgumentException("Missing value of option " + args[i]);
+            options.put(args[i].replaceFirst("^-+", ""), args[i + 1]);
+        }
+        switch (args[0]) {
+            case "genkey":
+                System.out.println(XOR.newInstance(Integer.parseInt(options.getOrDefault("bytes", "24"))).getKeyHex());
+                break;
+            case "verify":
+                verify(realm(options, "config", "realm"), Paths.get(required(options, "in")));
+                break;
+            case "reencrypt": {
+                CookieAuthRealm from = realm(options, "config", "realm");
+                CookieAuthRealm to = realm(options, options.containsKey("to-config") ? "to-config" : "config", options.containsKey("to-realm") ? "to-realm" : "realm");
+                reencrypt(from, to, Paths.get(required(options, "in")), Paths.get(required(options, "out")));
+                break;
+            }
+            default:
+                usage();
+        }
+    }
+
+    static Stats verify(CookieAuthRealm realm, Path in) throws IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Stats stats;
+        try (Stream<String> lines = Files.lines(in, StandardCharsets.US_ASCII)) {
+            stats = lines.parallel()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .collect(Collector.of(Stats::new, (s, token) -> s.add(realm, token, now), Stats::merge));
+        }
+        stats.print(System.out, System.nanoTime() - start);
+        return stats;
+    }
+
+    static void reencrypt(CookieAuthRealm from, CookieAuthRealm to, Path in, Path out) throws IOException {
+        long start = System.nanoTime();
+        long[] counts;
+        try (Stream<String> lines = Files.lines(in, StandardCharsets.US_ASCII);
+             BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.US_ASCII)) {
+            counts = lines.parallel()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .collect(Collector.of(() -> new Output(writer), (output, token) -> {
+                    CookieAuthFeature.StoredPrincipal storedPrincipal = CookieAuthFeature.StoredPrincipal.decrypt(from.getKeyring(), token);
+                    String line = token;
+                    int count = 1;
+                    if (storedPrincipal != null && to.getTokenFormat() == TokenFormat.LEGACY && !TokenClaims.NONE.equals(storedPrincipal.claims)) {
+                        count = 2;
+                    } else if (storedPrincipal != null) {
+                        try {
+                            line = token + " " + storedPrincipal.encrypt(to.getKeyring(), to.getTokenFormat());
+                            count = 0;
+                        } catch (IllegalArgumentException e) {
+                            // principal not supported by the target format
+                        }
+                    }
+                    output.add(line, count);
+                }, Output::merge, Output::close));
+        }
+        System.out.println("re-encrypted: " + counts[0] + ", invalid: " + counts[1] + ", in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        if (counts[2] > 0) {
+            System.out.println("WARNING: " + counts[2] + " tokens with claims not re-encrypted: the " + TokenFormat.LEGACY + " format of the target realm cannot hold them");
+        }
+    }
+
+    private static CookieAuthRealm realm(Map<String, String> options, String config, String realm) throws IOException {
+        String name = required(options, realm);
+        for (CookieAuthRealmConfig realmConfig : CookieAuthRealmConfigFile.read(Paths.get(required(options, config)))) {
+            if (name.equals(realmConfig.getRealName())) {
+                return CookieAuthRealm.compile(realmConfig, null);
+            }
+        }
+        throw new IllegalArgumentException("Realm " + name + " not found in " + options.get(config));
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing option -" + name);
+        return value;
+    }
+
+    private static void usage() {
+        System.out.println("Usage:");
+        System.out.println("  genkey [-bytes 24]");
+        System.out.println("  verify -config realms.json -realm my-realm -in tokens.txt");
+        System.out.println("  reencrypt -config realms.json -realm my-realm [-to-config new-realms.json] [-to-realm my-realm] -in tokens.txt -out out.txt");
+    }
+
+    /**
+     * Lines of one parallel chunk, written by blocks so that the workers do not wait for each other on each line.
+     * Lines are independent: there is no need to keep the input order.
+     */
+    static final class Output {
+        private static final int BLOCK_SIZE = 64 * 1024;
+
+        final Writer writer;
+        final StringBuilder lines = new StringBuilder(BLOCK_SIZE + 256);
+        // re-encrypted, invalid, not re-encrypted because the claims would be lost
+        final long[] counts = new long[3];
+
+        Output(Writer writer) {
+            this.writer = writer;
+        }
+
+        void add(String line, int count) {
+            lines.append(line).append(System.lineSeparator());
+            counts[count]++;
+            if (lines.length() >= BLOCK_SIZE) {
+                flush();
+            }
+        }
+
+        Output merge(Output other) {
+            other.flush();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            return this;
+        }
+
+        long[] close() {
+            flush();
+            return counts;
+        }
+
+        private void flush() {
+            if (lines.length() == 0) {
+                return;
+            }
+            synchronized (writer) {
+                try {
+                    writer.append(lines);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            lines.setLength(0);
+        }
+    }
+
+    /**
+     * Counts of one parallel chunk, merged at the end
+     */
+    static final class Stats {
+        long total;
+        long invalid;
+        long expired;
+        final long[] lifetimes = new long[LIFETIME_NAMES.length];
+        final Map<Integer, Long> keyVersions = new TreeMap<>();
+
+        void add(CookieAuthRealm realm, String token, long now) {
+            total++;
+            CookieAuthFeature.StoredPrincipal storedPrincipal = CookieAuthFeature.StoredPrincipal.decrypt(realm.getKeyring(), token);
+            if (storedPrincipal == null) {
+                invalid++;
+                return;
+            }
+            keyVersions.merge(storedPrincipal.keyVersion, 1L, Long::sum);
+            long remaining = storedPrincipal.time + realm.getCookieMaxAge() * 1000L - now;
+            if (remaining <= 0) {
+                expired++;
+                return;
+            }
+            int i = 0;
+            while (i < LIFETIMES.length && remaining >= LIFETIMES[i]) i++;
+            lifetimes[i]++;
+        }
+
+        Stats merge(Stats other) {
+            total += other.total;
+            invalid += other.invalid;
+            expired += other.expired;
+            for (int i = 0; i < lifetimes.length; i++) {
+                lifetimes[i] += other.lifetimes[i];
+            }
+            other.keyVersions.forEach((version, count) -> keyVersions.merge(version, count, Long::sum));
+            return this;
+        }
+
+        void print(PrintStream out, long nanos) {
+            out.println("tokens: " + total + " in " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms");
+            out.println("invalid: " + invalid);
+            out.println("expired: " + expired);
+            out.println("valid, by remaining lifetime:");
+            for (int i = 0; i < lifetimes.length; i++) {
+                out.println("  " + LIFETIME_NAMES[i] + ": " + lifetimes[i]);
+            }
+            out.println("readable, by key version:");
+            keyVersions.forEach((version, count) -> out.println("  " + version + ": " + count));
+        }
+    }
+
+}
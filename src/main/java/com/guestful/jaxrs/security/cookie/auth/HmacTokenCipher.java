@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * HMAC-SHA256 token cipher: token bytes followed by the first 16 bytes of their MAC.
+ * <p>
+ * Each thread keeps a Mac already initialized with the key, which is reset by each doFinal.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class HmacTokenCipher implements TokenCipher {
+
+    private static final int MAC_LENGTH = 16;
+    private static final ThreadLocal<byte[]> DIGEST = ThreadLocal.withInitial(() -> new byte[32]);
+
+    private final ThreadLocal<Mac> mac;
+
+    HmacTokenCipher(byte[] key) {
+        if (key.length < 16) {
+            throw new IllegalArgumentException("HMAC key must be at least 16 bytes long");
+        }
+        SecretKeySpec spec = new SecretKeySpec(key, "HmacSHA256");
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(spec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 not available: " + e.getMessage(), e);
+            }
+        });
+        // fail fast if the key is refused by the provider
+        mac.get();
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return true;
+    }
+
+    @Override
+    public int seal(byte[] plain, int len, byte[] out) {
+        System.arraycopy(plain, 0, out, 0, len);
+        System.arraycopy(digest(plain, len), 0, out, len, MAC_LENGTH);
+        return len + MAC_LENGTH;
+    }
+
+    @Override
+    public int open(byte[] sealed, int len, byte[] plain) {
+        int n = len - MAC_LENGTH;
+        if (n <= 0) {
+            return -1;
+        }
+        byte[] digest = digest(sealed, n);
+        // constant time comparison
+        int diff = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            diff |= digest[i] ^ sealed[n + i];
+        }
+        if (diff != 0) {
+            return -1;
+        }
+        System.arraycopy(sealed, 0, plain, 0, n);
+        return n;
+    }
+
+    private byte[] digest(byte[] data, int len) {
+        Mac mac = this.mac.get();
+        byte[] digest = DIGEST.get();
+        mac.update(data, 0, len);
+        try {
+            mac.doFinal(digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return digest;
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.net.IDN;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable trie of domains keyed by their labels, last label first. A domain matches itself and its sub-domains,
+ * the longest one wins and <code>*</code> matches any host. Hosts are matched case-insensitively, ignoring their port,
+ * with one hash lookup per label and no allocation. Internationalized domains are compiled to their ASCII (punycode) form,
+ * as sent in Host headers.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class HostSuffixTrie<V> {
+
+    static final String ANY = "*";
+
+    private static final HostSuffixTrie<?> EMPTY = new HostSuffixTrie<>(new HashMap<>(), null);
+
+    // open addressing tables of the child labels, lower case
+    private final String[] labels;
+    private final HostSuffixTrie<V>[] children;
+    private final int mask;
+    private final V value;
+
+    @SuppressWarnings("unchecked")
+    private HostSuffixTrie(Map<String, HostSuffixTrie<V>> children, V value) {
+        int size = Integer.highestOneBit(Math.max(1, children.size() * 2 - 1)) << 1;
+        this.labels = new String[size];
+        this.children = new HostSuffixTrie[size];
+        this.mask = size - 1;
+        this.value = value;
+        for (Map.Entry<String, HostSuffixTrie<V>> entry : children.entrySet()) {
+            String label = entry.getKey();
+            int i = hash(label, 0, label.length()) & mask;
+            while (labels[i] != null) {
+                i = (i + 1) & mask;
+            }
+            labels[i] = label;
+            this.children[i] = entry.getValue();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> HostSuffixTrie<V> empty() {
+        return (HostSuffixTrie<V>) EMPTY;
+    }
+
+    /**
+     * @throws IllegalArgumentException if two values share a domain
+     */
+    static <V> HostSuffixTrie<V> compile(Map<String, V> domains) {
+        if (domains.isEmpty()) {
+            return empty();
+        }
+        Node<V> root = new Node<>();
+        for (Map.Entry<String, V> entry : domains.entrySet()) {
+            String domain = entry.getKey().trim().toLowerCase(Locale.ROOT);
+            Node<V> node = root;
+            if (!domain.equals(ANY)) {
+                if (domain.startsWith("*.")) domain = domain.substring(2);
+                if (domain.startsWith(".")) domain = domain.substring(1);
+                if (domain.endsWith(".")) domain = domain.substring(0, domain.length() - 1);
+                domain = IDN.toASCII(domain).toLowerCase(Locale.ROOT);
+                String[] labels = domain.split("\\.");
+                for (int i = labels.length - 1; i >= 0; i--) {
+                    if (labels[i].isEmpty()) throw new IllegalArgumentException("Bad domain: " + entry.getKey());
+                    node = node.children.computeIfAbsent(labels[i], l -> new Node<>());
+                }
+            }
+            if (node.value != null && !node.value.equals(entry.getValue())) {
+                throw new IllegalArgumentException("Domain " + entry.getKey() + " used twice");
+            }
+            node.value = entry.getValue();
+        }
+        return root.freeze();
+    }
+
+    boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * @param host value of a Host header, with or without port
+     * @return the value of the longest domain of this host, or null
+     */
+    V match(String host) {
+        int end = host.length();
+        int colon = host.lastIndexOf(':');
+        // IPv6 addresses have several colons and no domain
+        if (colon >= 0 && host.indexOf(':') == colon) {
+            end = colon;
+        }
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        HostSuffixTrie<V> node = this;
+        V match = value;
+        while (end > 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.child(host, start, end - start);
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                match = node.value;
+            }
+            end = start - 1;
+        }
+        return match;
+    }
+
+    private HostSuffixTrie<V> child(String host, int off, int len) {
+        int i = hash(host, off, len) & mask;
+        for (String label; (label = labels[i]) != null; i = (i + 1) & mask) {
+            if (label.length() == len && label.regionMatches(true, 0, host, off, len)) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    private static int hash(String s, int off, int len) {
+        int h = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = s.charAt(i);
+            h = 31 * h + (c >= 'A' && c <= 'Z' ? c + 32 : c);
+        }
+        // spreads the high bits, for small tables
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Node<V> {
+        final Map<String, Node<V>> children = new HashMap<>();
+        V value;
+
+        HostSuffixTrie<V> freeze() {
+            Map<String, HostSuffixTrie<V>> frozen = new HashMap<>();
+            for (Map.Entry<String, Node<V>> entry : children.entrySet()) {
+                frozen.put(entry.getKey(), entry.getValue().freeze());
+            }
+            return new HostSuffixTrie<>(frozen, value);
+        }
+    }
+
+}
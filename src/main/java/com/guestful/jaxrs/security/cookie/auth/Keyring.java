@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.Map;
+
+/**
+ * Compiled key material of a realm: the active key used to issue new tokens, followed by the older keys
+ * that are still accepted to read tokens issued before a key rotation.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class Keyring {
+
+    private final int[] versions;
+    private final TokenCipher[] keys;
+
+    private Keyring(int[] versions, TokenCipher[] keys) {
+        this.versions = versions;
+        this.keys = keys;
+    }
+
+    int getActiveVersion() {
+        return versions[0];
+    }
+
+    TokenCipher getActiveKey() {
+        return keys[0];
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    int getVersion(int index) {
+        return versions[index];
+    }
+
+    TokenCipher getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return true if all the keys detect tampered tokens
+     */
+    boolean isAuthenticated() {
+        for (TokenCipher key : keys) {
+            if (!key.isAuthenticated()) return false;
+        }
+        return true;
+    }
+
+    static Keyring compile(Map<Integer, String> hexKeys, int activeVersion, TokenCipher.Factory factory) {
+        if (!hexKeys.containsKey(activeVersion)) {
+            throw new IllegalArgumentException("Missing encryption key version " + activeVersion);
+        }
+        int[] versions = new int[hexKeys.size()];
+        TokenCipher[] keys = new TokenCipher[hexKeys.size()];
+        int i = 1;
+        for (Map.Entry<Integer, String> entry : hexKeys.entrySet()) {
+            byte[] key = DatatypeConverter.parseHexBinary(entry.getValue());
+            int index = entry.getKey() == activeVersion ? 0 : i++;
+            versions[index] = entry.getKey();
+            try {
+                keys[index] = factory.create(key);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Bad encryption key version " + entry.getKey() + ": " + e.getMessage(), e);
+            }
+        }
+        return new Keyring(versions, keys);
+    }
+
+}
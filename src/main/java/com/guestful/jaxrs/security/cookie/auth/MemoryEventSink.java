@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the last events written, for tests or an admin page.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class MemoryEventSink implements CookieAuthEventSink {
+
+    private final int maxEvents;
+    private final Deque<CookieAuthEvent> events = new ArrayDeque<>();
+
+    MemoryEventSink(int maxEvents) {
+        if (maxEvents < 1) throw new IllegalArgumentException("Bad size: " + maxEvents);
+        this.maxEvents = maxEvents;
+    }
+
+    @Override
+    public synchronized void write(List<CookieAuthEvent> events) {
+        for (CookieAuthEvent event : events) {
+            if (this.events.size() == maxEvents) {
+                this.events.removeFirst();
+            }
+            this.events.addLast(event);
+        }
+    }
+
+    /**
+     * @return the events kept, oldest first
+     */
+    public synchronized List<CookieAuthEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    public synchronized void clear() {
+        events.clear();
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of path prefixes, compiled once and matched without allocation. A prefix matches whole path segments:
+ * <code>api/admin</code> matches <code>api/admin</code> and <code>api/admin/users</code> but not <code>api/administrators</code>.
+ * Leading slashes are ignored, in prefixes as in paths.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class PathPrefixTrie<V> {
+
+    @SuppressWarnings("unchecked")
+    private static final PathPrefixTrie<?> EMPTY = new PathPrefixTrie<>(new char[0], new PathPrefixTrie[0], null);
+
+    // sorted, for a binary search of the child of a char
+    private final char[] chars;
+    private final PathPrefixTrie<V>[] children;
+    private final V value;
+
+    private PathPrefixTrie(char[] chars, PathPrefixTrie<V>[] children, V value) {
+        this.chars = chars;
+        this.children = children;
+        this.value = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PathPrefixTrie<V> empty() {
+        return (PathPrefixTrie<V>) EMPTY;
+    }
+
+    /**
+     * @throws IllegalArgumentException if two values share a prefix
+     */
+    static <V> PathPrefixTrie<V> compile(Map<String, V> prefixes) {
+        if (prefixes.isEmpty()) {
+            return empty();
+        }
+        Node<V> root = new Node<>();
+        for (Map.Entry<String, V> entry : prefixes.entrySet()) {
+            String prefix = entry.getKey();
+            Node<V> node = root;
+            for (int i = skipSlashes(prefix); i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node<>());
+            }
+            if (node.value != null && !node.value.equals(entry.getValue())) {
+                throw new IllegalArgumentException("Path prefix " + prefix + " used twice");
+            }
+            node.value = entry.getValue();
+        }
+        return root.freeze();
+    }
+
+    boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * @return the value of the longest prefix of the path, or null
+     */
+    V match(CharSequence path) {
+        PathPrefixTrie<V> node = this;
+        V match = value;
+        int len = path.length();
+        for (int i = skipSlashes(path); i < len; i++) {
+            char c = path.charAt(i);
+            // a prefix ending with a slash matches the segments below it, others must end on a segment boundary
+            if (c == '/' && node.value != null) {
+                match = node.value;
+            }
+            int idx = Arrays.binarySearch(node.chars, c);
+            if (idx < 0) {
+                return match;
+            }
+            node = node.children[idx];
+            if (c == '/' && node.value != null) {
+                match = node.value;
+            }
+        }
+        return node.value != null ? node.value : match;
+    }
+
+    private static int skipSlashes(CharSequence s) {
+        int i = 0;
+        while (i < s.length() && s.charAt(i) == '/') i++;
+        return i;
+    }
+
+    private static final class Node<V> {
+        final Map<Character, Node<V>> children = new TreeMap<>();
+        V value;
+
+        @SuppressWarnings("unchecked")
+        PathPrefixTrie<V> freeze() {
+            char[] chars = new char[children.size()];
+            PathPrefixTrie<V>[] frozen = new PathPrefixTrie[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Node<V>> entry : children.entrySet()) {
+                chars[i] = entry.getKey();
+                frozen[i++] = entry.getValue().freeze();
+            }
+            return new PathPrefixTrie<>(chars, frozen, value);
+        }
+    }
+
+}
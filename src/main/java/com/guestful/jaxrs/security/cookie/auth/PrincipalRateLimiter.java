@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per principal, implemented as GCRA: each bucket is a single theoretical arrival time updated by CAS,
+ * in a concurrent (striped) map.
+ * <p>
+ * A bucket whose arrival time has passed is full again, so it is equivalent to no bucket at all: such idle buckets are
+ * evicted when the map reaches its maximum size, which bounds the memory. If all the buckets are busy, new principals
+ * are not limited until some become idle.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class PrincipalRateLimiter {
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int maxSize;
+    // nanos between two permits
+    private final long interval;
+    // how far the arrival time can be ahead of now
+    private final long tolerance;
+    private final AtomicLong lastEviction = new AtomicLong();
+
+    PrincipalRateLimiter(double permitsPerSecond, int burst, int maxSize) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("Bad rate: " + permitsPerSecond);
+        if (burst < 1) throw new IllegalArgumentException("Bad burst: " + burst);
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxSize = maxSize;
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.tolerance = interval * (burst - 1);
+    }
+
+    boolean sameSettings(double permitsPerSecond, int burst, int maxSize) {
+        return this.permitsPerSecond == permitsPerSecond && this.burst == burst && this.maxSize == maxSize;
+    }
+
+    /**
+     * @return 0 if the request of this principal is allowed, else the number of nanos to wait before the next permit
+     */
+    long acquire(String principal, long now) {
+        AtomicLong bucket = buckets.get(principal);
+        if (bucket == null) {
+            if (buckets.size() >= maxSize && !evictIdle(now)) {
+                return 0;
+            }
+            bucket = buckets.computeIfAbsent(principal, p -> new AtomicLong(now));
+        }
+        while (true) {
+            long tat = bucket.get();
+            long base = Math.max(tat, now);
+            if (base - now > tolerance) {
+                return base - now - tolerance;
+            }
+            if (bucket.compareAndSet(tat, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * @return true if there is room for a new bucket
+     */
+    private boolean evictIdle(long now) {
+        long last = lastEviction.get();
+        // one sweep at a time, at most every interval
+        if (now - last >= interval && lastEviction.compareAndSet(last, now)) {
+            buckets.values().removeIf(bucket -> bucket.get() <= now);
+        }
+        return buckets.size() < maxSize;
+    }
+
+}
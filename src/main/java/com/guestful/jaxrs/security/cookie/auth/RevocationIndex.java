@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.security.Principal;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Revoked tokens of a realm: tokens issued before a "not before" time, for all principals or per principal.
+ * <p>
+ * Principals are stored by their 16 bytes id (or a 128 bits hash of ids of other lengths) in an open-addressing table of primitive longs (3 per slot: the id and
+ * the not before time), read without locking. Writes are serialized. Entries older than the max age of the realm are
+ * useless (all the tokens they revoke are expired anyway) and are pruned when the table is rebuilt, which happens when
+ * it grows and at most once per max age on writes.
+ * <p>
+ * The index is local to this JVM: revocations have to be applied on each node.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class RevocationIndex {
+
+    private static final int STRIDE = 3;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile long maxAgeMillis;
+    private volatile AtomicLongArray table = new AtomicLongArray(MIN_CAPACITY * STRIDE);
+    private volatile long globalNotBefore;
+    // volatile so that lookups can skip an empty index without locking
+    private volatile int size;
+    private long lastPrune = System.currentTimeMillis();
+
+    RevocationIndex(int maxAgeSec) {
+        setMaxAge(maxAgeSec);
+    }
+
+    /**
+     * Revokes all the tokens issued until now for this principal
+     */
+    public void revoke(Principal principal) {
+        revoke(principal, System.currentTimeMillis());
+    }
+
+    /**
+     * Revokes the tokens issued before the given time for this principal
+     */
+    public synchronized void revoke(Principal principal, long issuedBefore) {
+        long[] id = id(principal);
+        if (issuedBefore <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // keep the load factor under 75%
+        if (now - lastPrune > maxAgeMillis || (size + 1) * 4L > (table.length() / STRIDE) * 3L) {
+            rebuild(now);
+        }
+        if (put(table, id[0], id[1], issuedBefore)) {
+            size++;
+        }
+    }
+
+    /**
+     * Revokes the tokens issued before the given time for all principals
+     */
+    public synchronized void revokeAll(long issuedBefore) {
+        if (issuedBefore > globalNotBefore) {
+            globalNotBefore = issuedBefore;
+        }
+    }
+
+    public long getNotBefore() {
+        return globalNotBefore;
+    }
+
+    public long getNotBefore(Principal principal) {
+        if (size == 0) {
+            // nothing to look up: the id is not even decoded
+            return globalNotBefore;
+        }
+        long[] id = id(principal);
+        return Math.max(globalNotBefore, find(id[0], id[1]));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes the entries older than the max age of the realm
+     */
+    public synchronized void prune() {
+        rebuild(System.currentTimeMillis());
+    }
+
+    boolean isRevoked(long id1, long id2, long issuedAt) {
+        return issuedAt < globalNotBefore || issuedAt < find(id1, id2);
+    }
+
+    private long find(long id1, long id2) {
+        AtomicLongArray table = this.table;
+        int mask = table.length() / STRIDE - 1;
+        for (int slot = hash(id1, id2) & mask; ; slot = (slot + 1) & mask) {
+            int i = slot * STRIDE;
+            // the time is written last: once seen, the id is visible
+            long time = table.get(i + 2);
+            if (time == 0) {
+                return 0;
+            }
+            if (table.get(i) == id1 && table.get(i + 1) == id2) {
+                return time;
+            }
+        }
+    }
+
+    /**
+     * @return true if a new entry was added
+     */
+    private static boolean put(AtomicLongArray table, long id1, long id2, long notBefore) {
+        int mask = table.length() / STRIDE - 1;
+        for (int slot = hash(id1, id2) & mask; ; slot = (slot + 1) & mask) {
+            int i = slot * STRIDE;
+            long time = table.get(i + 2);
+            if (time == 0) {
+                table.set(i, id1);
+                table.set(i + 1, id2);
+                table.set(i + 2, notBefore);
+                return true;
+            }
+            if (table.get(i) == id1 && table.get(i + 1) == id2) {
+                if (notBefore > time) {
+                    table.set(i + 2, notBefore);
+                }
+                return false;
+            }
+        }
+    }
+
+    private void rebuild(long now) {
+        long expired = now - maxAgeMillis;
+        AtomicLongArray old = this.table;
+        int count = 0;
+        for (int i = 0; i < old.length(); i += STRIDE) {
+            if (old.get(i + 2) > expired) count++;
+        }
+        // rebuilt half full at most, so that it grows again only after many inserts
+        int capacity = MIN_CAPACITY;
+        while ((count + 1) * 2L > capacity) {
+            capacity *= 2;
+        }
+        AtomicLongArray table = new AtomicLongArray(capacity * STRIDE);
+        for (int i = 0; i < old.length(); i += STRIDE) {
+            long time = old.get(i + 2);
+            if (time > expired) {
+                put(table, old.get(i), old.get(i + 1), time);
+            }
+        }
+        this.table = table;
+        this.size = count;
+        this.lastPrune = now;
+    }
+
+    void setMaxAge(int maxAgeSec) {
+        this.maxAgeMillis = maxAgeSec * 1000L;
+    }
+
+    private static long[] id(Principal principal) {
+        byte[] id = new byte[CookieAuthFeature.StoredPrincipal.MAX_PRINCIPAL_LENGTH];
+        int n = TokenCodec.decode(principal.getName(), id, 0, id.length);
+        if (n <= 0) {
+            throw new IllegalArgumentException("Bad principal: " + principal);
+        }
+        return new long[]{CookieAuthFeature.StoredPrincipal.id1(id, 0, n), CookieAuthFeature.StoredPrincipal.id2(id, 0, n)};
+    }
+
+    private static int hash(long id1, long id2) {
+        long h = id1 * 0x9e3779b97f4a7c15L ^ id2;
+        h ^= h >>> 31;
+        h *= 0xbf58476d1ce4e5b9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs at most a given number of messages per period. The messages dropped are counted and reported
+ * by a summary message at the beginning of the next period having messages to log.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class SampledLog {
+
+    private final Logger logger;
+    private final Level level;
+    private final int maxPerPeriod;
+    private final long periodMillis;
+    private final AtomicLong periodStart = new AtomicLong();
+    private final AtomicInteger logged = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    SampledLog(Logger logger, Level level, int maxPerPeriod, long periodMillis) {
+        this.logger = logger;
+        this.level = level;
+        this.maxPerPeriod = maxPerPeriod;
+        this.periodMillis = periodMillis;
+    }
+
+    void log(Supplier<String> message) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long start = periodStart.get();
+        if (now - start >= periodMillis && periodStart.compareAndSet(start, now)) {
+            logged.set(0);
+            long count = suppressed.sumThenReset();
+            if (count > 0) {
+                logger.log(level, count + " similar messages suppressed in the last " + (now - start) / 1000 + " seconds");
+            }
+        }
+        if (logged.incrementAndGet() <= maxPerPeriod) {
+            logger.log(level, message.get());
+        } else {
+            suppressed.increment();
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of rendered Set-Cookie header values, by principal, claims and bucketed issue time, so that a burst
+ * of requests of the same principal reuses one header instead of encrypting and serializing a new token each time.
+ * <p>
+ * Direct-mapped and lock-free: each slot keeps the last header rendered for a key mapped to it.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class SetCookieCache {
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    /**
+     * @param size rounded up to a power of 2
+     */
+    SetCookieCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the header rendered for this principal, claims and issue time, or null
+     */
+    String get(String principal, TokenClaims claims, long time) {
+        Entry entry = slots.get(index(principal, time));
+        return entry != null && entry.time == time && entry.principal.equals(principal) && entry.claims.equals(claims) ? entry.header : null;
+    }
+
+    void put(String principal, TokenClaims claims, long time, String header) {
+        slots.lazySet(index(principal, time), new Entry(principal, claims, time, header));
+    }
+
+    private int index(String principal, long time) {
+        int h = principal.hashCode() * 31 + Long.hashCode(time);
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static final class Entry {
+        final String principal;
+        final TokenClaims claims;
+        final long time;
+        final String header;
+
+        Entry(String principal, TokenClaims claims, long time, String header) {
+            this.principal = principal;
+            this.claims = claims;
+            this.time = time;
+            this.header = header;
+        }
+    }
+
+}
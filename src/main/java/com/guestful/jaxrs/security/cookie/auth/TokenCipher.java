@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+/**
+ * Protects the bytes of a token (laid out as described by its {@link TokenFormat}) before they are Base64 encoded
+ * in the cookie. Implementations are created once per key of a realm and must be thread-safe.
+ * <p>
+ * Only the authenticated ciphers ({@link #aesGcm()}, {@link #hmacSha256()}) detect tampered tokens:
+ * {@link #xor()} is kept to read and issue the tokens of the original format.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface TokenCipher {
+
+    /**
+     * @param plain bytes to protect, from index 0
+     * @param len   number of bytes to protect
+     * @param out   buffer receiving the protected token from index 0, at least {@link TokenCodec#MAX_TOKEN_LENGTH} long
+     * @return the number of bytes written to out
+     */
+    int seal(byte[] plain, int len, byte[] out);
+
+    /**
+     * @param sealed protected token, from index 0
+     * @param len    length of the protected token
+     * @param plain  buffer receiving the token bytes from index 0
+     * @return the number of bytes written to plain, or -1 if the token was not sealed with this key or was tampered with
+     */
+    int open(byte[] sealed, int len, byte[] plain);
+
+    /**
+     * @return true if {@link #open(byte[], int, byte[])} detects tampered tokens. Required by the {@link TokenFormat#V1} tokens,
+     * of which claims must not be forged.
+     */
+    default boolean isAuthenticated() {
+        return false;
+    }
+
+    interface Factory {
+        /**
+         * @throws IllegalArgumentException if the key is not suitable for this cipher
+         */
+        TokenCipher create(byte[] key);
+    }
+
+    /**
+     * Original cipher: the token is XOR'ed with a 24 bytes key, repeated over longer tokens. It gives no integrity:
+     * flipped bits are not detected, so realms using it cannot issue {@link TokenFormat#V1} tokens, of which claims
+     * could be forged.
+     */
+    static Factory xor() {
+        return key -> {
+            if (key.length != CookieAuthFeature.StoredPrincipal.TOKEN_LENGTH) {
+                throw new IllegalArgumentException("XOR key must be " + CookieAuthFeature.StoredPrincipal.TOKEN_LENGTH + " bytes long");
+            }
+            return XOR.newInstance(key);
+        };
+    }
+
+    /**
+     * AES-GCM with a random 12 bytes nonce and a 16 bytes tag, for a 16, 24 or 32 bytes key.
+     * Encrypts and authenticates the token (52 bytes).
+     */
+    static Factory aesGcm() {
+        return AesGcmTokenCipher::new;
+    }
+
+    /**
+     * HMAC-SHA256 truncated to 16 bytes, for a key of at least 16 bytes.
+     * Authenticates the token (40 bytes) but does not hide the principal id.
+     */
+    static Factory hmacSha256() {
+        return HmacTokenCipher::new;
+    }
+
+    /**
+     * @param name xor, aes-gcm or hmac-sha256
+     */
+    static Factory named(String name) {
+        switch (name) {
+            case "xor":
+                return xor();
+            case "aes-gcm":
+                return aesGcm();
+            case "hmac-sha256":
+                return hmacSha256();
+            default:
+                throw new IllegalArgumentException("Bad token cipher: " + name);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+/**
+ * Claims carried by {@link TokenFormat#V1} tokens, so that a {@link CookieAuthorizer} can decide without a lookup.
+ * Immutable: the with methods return a new instance.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class TokenClaims {
+
+    /**
+     * Claims of a remembered principal: no roles, no tenant. Also used for the tokens of the legacy format.
+     */
+    public static final TokenClaims NONE = new TokenClaims(false, 0, 0);
+
+    private final boolean authenticated;
+    private final long roles;
+    private final long tenant;
+
+    private TokenClaims(boolean authenticated, long roles, long tenant) {
+        this.authenticated = authenticated;
+        this.roles = roles;
+        this.tenant = tenant;
+    }
+
+    /**
+     * @return true if the principal logged in (as opposed to being remembered) when the token was first issued
+     */
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * @return the role bits, application defined
+     */
+    public long getRoles() {
+        return roles;
+    }
+
+    public boolean hasRole(int bit) {
+        return (roles & 1L << bit) != 0;
+    }
+
+    /**
+     * @return the tenant id, 0 for none
+     */
+    public long getTenant() {
+        return tenant;
+    }
+
+    public TokenClaims withAuthenticated(boolean authenticated) {
+        return authenticated == this.authenticated ? this : new TokenClaims(authenticated, roles, tenant);
+    }
+
+    public TokenClaims withRoles(long roles) {
+        return roles == this.roles ? this : new TokenClaims(authenticated, roles, tenant);
+    }
+
+    public TokenClaims withRole(int bit) {
+        if (bit < 0 || bit > 63) throw new IllegalArgumentException("Bad role bit: " + bit);
+        return withRoles(roles | 1L << bit);
+    }
+
+    public TokenClaims withTenant(long tenant) {
+        return tenant == this.tenant ? this : new TokenClaims(authenticated, roles, tenant);
+    }
+
+    static TokenClaims of(boolean authenticated, long roles, long tenant) {
+        return !authenticated && roles == 0 && tenant == 0 ? NONE : new TokenClaims(authenticated, roles, tenant);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TokenClaims that = (TokenClaims) o;
+        return authenticated == that.authenticated && roles == that.roles && tenant == that.tenant;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = authenticated ? 1 : 0;
+        result = 31 * result + Long.hashCode(roles);
+        result = 31 * result + Long.hashCode(tenant);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "{authenticated=" + authenticated + ", roles=" + Long.toHexString(roles) + ", tenant=" + tenant + "}";
+    }
+}
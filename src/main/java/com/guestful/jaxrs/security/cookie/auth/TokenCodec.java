@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import java.util.Arrays;
+
+/**
+ * URL-safe Base64 (without padding) codec for cookie tokens working on per-thread scratch buffers,
+ * so that decoding and encoding a token only allocates the resulting String.
+ * <p>
+ * Buffers returned by {@link #scratch()} are owned by the calling thread and reused by the next call on that thread.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class TokenCodec {
+
+    static final int MAX_TOKEN_LENGTH = 256;
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] SEXTETS = new byte[128];
+
+    static {
+        Arrays.fill(SEXTETS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            SEXTETS[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private TokenCodec() {
+    }
+
+    static byte[] scratch() {
+        return SCRATCH.get().bytes;
+    }
+
+    /**
+     * Second per-thread buffer, holding the sealed form of the token in {@link #scratch()}
+     */
+    static byte[] sealed() {
+        return SCRATCH.get().sealed;
+    }
+
+    static int encodedLength(int byteLength) {
+        return (byteLength * 4 + 2) / 3;
+    }
+
+    /**
+     * @return the number of bytes written in dst at offset off, or -1 if the value is not valid URL-safe Base64
+     * or decodes to more than max bytes.
+     */
+    static int decode(CharSequence src, byte[] dst, int off, int max) {
+        int len = src.length();
+        while (len > 0 && src.charAt(len - 1) == '=') len--;
+        int rem = len & 3;
+        if (rem == 1) return -1;
+        int n = (len >>> 2) * 3 + (rem == 0 ? 0 : rem - 1);
+        if (n > max || off + n > dst.length) return -1;
+        int o = off;
+        int full = len - rem;
+        for (int i = 0; i < full; i += 4) {
+            int a = sextet(src.charAt(i));
+            int b = sextet(src.charAt(i + 1));
+            int c = sextet(src.charAt(i + 2));
+            int d = sextet(src.charAt(i + 3));
+            if ((a | b | c | d) < 0) return -1;
+            int bits = a << 18 | b << 12 | c << 6 | d;
+            dst[o++] = (byte) (bits >>> 16);
+            dst[o++] = (byte) (bits >>> 8);
+            dst[o++] = (byte) bits;
+        }
+        if (rem >= 2) {
+            int a = sextet(src.charAt(full));
+            int b = sextet(src.charAt(full + 1));
+            int c = rem == 3 ? sextet(src.charAt(full + 2)) : 0;
+            if ((a | b | c) < 0) return -1;
+            int bits = a << 18 | b << 12 | c << 6;
+            dst[o++] = (byte) (bits >>> 16);
+            if (rem == 3) dst[o++] = (byte) (bits >>> 8);
+        }
+        return n;
+    }
+
+    static String encode(byte[] src, int off, int len) {
+        char[] out = SCRATCH.get().chars;
+        int o = 0;
+        int i = off;
+        int end = off + len;
+        while (end - i >= 3) {
+            int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+        int rem = end - i;
+        if (rem > 0) {
+            int bits = (src[i] & 0xff) << 16 | (rem == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            if (rem == 2) out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+        }
+        return new String(out, 0, o);
+    }
+
+    static long getLong(byte[] src, int off) {
+        long v = 0;
+        for (int i = off; i < off + 8; i++) {
+            v = v << 8 | (src[i] & 0xff);
+        }
+        return v;
+    }
+
+    static void putLong(byte[] dst, int off, long v) {
+        for (int i = off + 7; i >= off; i--) {
+            dst[i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    /**
+     * Writes v as an unsigned LEB128 varint
+     *
+     * @return the index following the varint
+     */
+    static int putVarLong(byte[] dst, int off, long v) {
+        while ((v & ~0x7fL) != 0) {
+            dst[off++] = (byte) (v & 0x7f | 0x80);
+            v >>>= 7;
+        }
+        dst[off++] = (byte) v;
+        return off;
+    }
+
+    /**
+     * @return the number of bytes of the varint starting at off, or -1 if it does not end before end
+     */
+    static int varLongSize(byte[] src, int off, int end) {
+        for (int i = off; i < end && i - off < 10; i++) {
+            if (src[i] >= 0) return i - off + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a varint whose size was checked with {@link #varLongSize(byte[], int, int)}
+     */
+    static long getVarLong(byte[] src, int off) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = src[off++];
+            v |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    /**
+     * 64 bits hash of a principal id, when it cannot be used directly as two longs
+     */
+    static long hash64(byte[] src, int off, int len, long seed) {
+        long h = seed ^ len * 0x9e3779b97f4a7c15L;
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (src[i] & 0xff)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static int sextet(char c) {
+        return c < 128 ? SEXTETS[c] : -1;
+    }
+
+    private static final class Scratch {
+        final byte[] bytes = new byte[MAX_TOKEN_LENGTH];
+        final byte[] sealed = new byte[MAX_TOKEN_LENGTH];
+        final char[] chars = new char[encodedLength(MAX_TOKEN_LENGTH)];
+    }
+
+}
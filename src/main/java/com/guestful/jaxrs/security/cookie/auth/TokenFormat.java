@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+/**
+ * Layout of the token bytes before they are sealed by the {@link TokenCipher}. Tokens of both formats are always read,
+ * the format of a realm only selects how new tokens are issued.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public enum TokenFormat {
+
+    /**
+     * 24 bytes: issue time (8 bytes, the first one always 0) followed by the 16 bytes principal id. Carries no claims.
+     */
+    LEGACY,
+
+    /**
+     * Version byte (1), flags byte, then varints: issue time, principal id length followed by the id (up to 64 bytes),
+     * roles and tenant when present. Carries the {@link TokenClaims}.
+     */
+    V1
+
+}
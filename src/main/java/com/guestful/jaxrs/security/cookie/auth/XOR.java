@@ -18,12 +18,11 @@ package com.guestful.jaxrs.security.cookie.auth;
 import javax.xml.bind.DatatypeConverter;
 import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.Base64;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
-class XOR {
+class XOR implements TokenCipher {
 
     private final byte[] key;
 
@@ -56,6 +55,31 @@ class XOR {
         }
     }
 
+    public void xor(byte[] data, int off, int len) {
+        if (len != key.length) {
+            throw new IllegalArgumentException("Unable to encrypt: not same length (" + key.length + " bytes)");
+        }
+        for (int i = 0; i < len; i++) {
+            data[off + i] = (byte) (data[off + i] ^ key[i]);
+        }
+    }
+
+    /**
+     * Tokens longer than the key are XOR'ed with the key repeated. Nothing detects tampered tokens: see {@link TokenCipher#xor()}
+     */
+    @Override
+    public int seal(byte[] plain, int len, byte[] out) {
+        for (int i = 0; i < len; i++) {
+            out[i] = (byte) (plain[i] ^ key[i % key.length]);
+        }
+        return len;
+    }
+
+    @Override
+    public int open(byte[] sealed, int len, byte[] plain) {
+        return seal(sealed, len, plain);
+    }
+
     public String xor(String hex) {
         byte[] bytes = DatatypeConverter.parseHexBinary(hex);
         xor(bytes);
@@ -89,35 +113,4 @@ class XOR {
         }
     }
 
-    // just to test
-    public static void main(String[] args) throws Exception {
-        XOR xor = XOR.newInstance(22);
-        XOR b64xor = XOR.newInstance(16);
-
-        String data = "n0URmCU1_KkkygLn9-1wlQ";
-        System.out.println(data.length() + " " + data);
-
-        System.out.println("b64");
-
-        byte[] b64 = Base64.getUrlDecoder().decode(data);
-        System.out.println(b64.length + " " + DatatypeConverter.printHexBinary(b64));
-
-        b64xor.xor(b64);
-        System.out.println(b64.length + " " + DatatypeConverter.printHexBinary(b64));
-
-        b64xor.xor(b64);
-        System.out.println(b64.length + " " + DatatypeConverter.printHexBinary(b64));
-
-        System.out.println("ascii");
-
-        byte[] ascii = data.getBytes("ASCII");
-        System.out.println(ascii.length + " " + DatatypeConverter.printHexBinary(ascii));
-
-        xor.xor(ascii);
-        System.out.println(ascii.length + " " + DatatypeConverter.printHexBinary(ascii));
-
-        xor.xor(ascii);
-        System.out.println(ascii.length + " " + DatatypeConverter.printHexBinary(ascii));
-    }
-
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CachingCookieAuthorizerTest {
+
+    private static final CookieAuth REQUIRED = new CookieAuthIndex.IndexedCookieAuth("r", false, false);
+    private static final CookieAuth OPTIONAL = new CookieAuthIndex.IndexedCookieAuth("r", true, false);
+    private static final Principal ALICE = new NamedPrincipal("alice");
+    private static final Principal BOB = new NamedPrincipal("bob");
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CookieAuthorizer delegate = (principal, cookieAuth) -> {
+        calls.incrementAndGet();
+        return principal.equals(ALICE);
+    };
+
+    @Test
+    public void decisions_are_cached_per_principal_and_annotation() {
+        CachingCookieAuthorizer authorizer = new CachingCookieAuthorizer(delegate, 100, 1, TimeUnit.HOURS);
+        assertTrue(authorizer.isAuthorized(ALICE, REQUIRED));
+        assertTrue(authorizer.isAuthorized(ALICE, REQUIRED));
+        assertFalse(authorizer.isAuthorized(BOB, REQUIRED));
+        assertFalse(authorizer.isAuthorized(BOB, REQUIRED));
+        assertTrue(authorizer.isAuthorized(ALICE, OPTIONAL));
+        assertTrue(authorizer.isAuthorized(new NamedPrincipal("alice"), REQUIRED));
+        assertEquals(3, calls.get());
+        assertEquals(3, authorizer.getMissCount());
+        assertEquals(3, authorizer.getHitCount());
+        assertEquals(3, authorizer.size());
+    }
+
+    @Test
+    public void claims_are_part_of_the_key() {
+        CachingCookieAuthorizer authorizer = new CachingCookieAuthorizer(new CookieAuthorizer() {
+            @Override
+            public boolean isAuthorized(Principal principal, CookieAuth cookieAuth) {
+                throw new AssertionError("claims not given");
+            }
+
+            @Override
+            public boolean isAuthorized(Principal principal, TokenClaims claims, CookieAuth cookieAuth) {
+                calls.incrementAndGet();
+                return claims.getRoles() == 1;
+            }
+        }, 100, 1, TimeUnit.HOURS);
+        assertTrue(authorizer.isAuthorized(ALICE, TokenClaims.of(false, 1, 0), REQUIRED));
+        assertFalse(authorizer.isAuthorized(ALICE, TokenClaims.of(false, 2, 0), REQUIRED));
+        assertTrue(authorizer.isAuthorized(ALICE, TokenClaims.of(false, 1, 0), REQUIRED));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void decisions_expire() throws InterruptedException {
+        CachingCookieAuthorizer authorizer = new CachingCookieAuthorizer(delegate, 100, 20, TimeUnit.MILLISECONDS);
+        authorizer.isAuthorized(ALICE, REQUIRED);
+        authorizer.isAuthorized(ALICE, REQUIRED);
+        assertEquals(1, calls.get());
+        Thread.sleep(50);
+        authorizer.isAuthorized(ALICE, REQUIRED);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void invalidation() {
+        CachingCookieAuthorizer authorizer = new CachingCookieAuthorizer(delegate, 100, 1, TimeUnit.HOURS);
+        authorizer.isAuthorized(ALICE, REQUIRED);
+        authorizer.isAuthorized(ALICE, OPTIONAL);
+        authorizer.isAuthorized(BOB, REQUIRED);
+        authorizer.invalidate(ALICE);
+        assertEquals(1, authorizer.size());
+        authorizer.isAuthorized(BOB, REQUIRED);
+        authorizer.isAuthorized(ALICE, REQUIRED);
+        assertEquals(4, calls.get());
+        authorizer.invalidateAll();
+        assertEquals(0, authorizer.size());
+    }
+
+    @Test
+    public void decisions_loaded_during_an_invalidation_are_not_cached() {
+        CachingCookieAuthorizer[] authorizer = new CachingCookieAuthorizer[1];
+        authorizer[0] = new CachingCookieAuthorizer((principal, cookieAuth) -> {
+            calls.incrementAndGet();
+            // the permissions of the principal change while they are read
+            authorizer[0].invalidate(principal);
+            return true;
+        }, 100, 1, TimeUnit.HOURS);
+        authorizer[0].isAuthorized(ALICE, REQUIRED);
+        assertEquals(0, authorizer[0].size());
+        authorizer[0].isAuthorized(ALICE, REQUIRED);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void size_is_bounded() {
+        CachingCookieAuthorizer authorizer = new CachingCookieAuthorizer(delegate, 10, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 100; i++) {
+            authorizer.isAuthorized(new NamedPrincipal("p" + i), REQUIRED);
+        }
+        assertTrue(authorizer.size() <= 10);
+        assertEquals(100 - authorizer.size(), authorizer.getEvictionCount());
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CoalescingCookieAuthorizerTest {
+
+    private static final CookieAuth REQUIRED = new CookieAuthIndex.IndexedCookieAuth("r", false, false);
+    private static final Principal ALICE = new NamedPrincipal("alice");
+    private static final Principal BOB = new NamedPrincipal("bob");
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void concurrent_lookups_of_a_principal_are_coalesced() throws Exception {
+        CompletableFuture<Boolean> lookup = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        CoalescingCookieAuthorizer authorizer = new CoalescingCookieAuthorizer((principal, cookieAuth) -> {
+            calls.incrementAndGet();
+            return lookup;
+        }, 10, TimeUnit.SECONDS);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(callers.submit(() -> authorizer.isAuthorized(ALICE, REQUIRED)));
+        }
+        await(() -> authorizer.getLoadCount() + authorizer.getCoalescedCount() == 4);
+        lookup.complete(true);
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, authorizer.getLoadCount());
+        assertEquals(3, authorizer.getCoalescedCount());
+        // completed lookups are not reused
+        assertTrue(authorizer.isAuthorized(ALICE, REQUIRED));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void timed_out_lookups_deny_and_are_retried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CoalescingCookieAuthorizer authorizer = new CoalescingCookieAuthorizer((principal, cookieAuth) -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        }, 50, TimeUnit.MILLISECONDS);
+        Future<Boolean> first = callers.submit(() -> authorizer.isAuthorized(ALICE, REQUIRED));
+        Future<Boolean> second = callers.submit(() -> authorizer.isAuthorized(ALICE, REQUIRED));
+        // the waiters of the lookup are released together, not each after its own timeout
+        assertFalse(first.get(10, TimeUnit.SECONDS));
+        assertFalse(second.get(10, TimeUnit.SECONDS));
+        assertFalse(authorizer.isAuthorized(ALICE, REQUIRED));
+        assertTrue(calls.get() >= 2);
+    }
+
+    @Test
+    public void failed_lookups_deny() {
+        CoalescingCookieAuthorizer failed = new CoalescingCookieAuthorizer((principal, cookieAuth) -> {
+            CompletableFuture<Boolean> lookup = new CompletableFuture<>();
+            lookup.completeExceptionally(new IllegalStateException("down"));
+            return lookup;
+        }, 1, TimeUnit.SECONDS);
+        assertFalse(failed.isAuthorized(ALICE, REQUIRED));
+        CoalescingCookieAuthorizer thrown = new CoalescingCookieAuthorizer((principal, cookieAuth) -> {
+            throw new IllegalStateException("down");
+        }, 1, TimeUnit.SECONDS);
+        assertFalse(thrown.isAuthorized(ALICE, REQUIRED));
+    }
+
+    @Test
+    public void full_batches_are_flushed_at_once() throws Exception {
+        Bulk bulk = new Bulk();
+        try (CoalescingCookieAuthorizer authorizer = new CoalescingCookieAuthorizer(bulk, 10, 1, 2, TimeUnit.SECONDS)) {
+            Future<Boolean> alice = callers.submit(() -> authorizer.isAuthorized(ALICE, REQUIRED));
+            Future<Boolean> bob = callers.submit(() -> authorizer.isAuthorized(BOB, REQUIRED));
+            assertTrue(alice.get(10, TimeUnit.SECONDS));
+            assertFalse(bob.get(10, TimeUnit.SECONDS));
+            assertEquals(1, authorizer.getBulkCallCount());
+            assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList(ALICE, BOB))), bulk.batches);
+        }
+    }
+
+    @Test
+    public void batches_are_flushed_after_the_window() {
+        Bulk bulk = new Bulk();
+        try (CoalescingCookieAuthorizer authorizer = new CoalescingCookieAuthorizer(bulk, 10000, 20, 100, TimeUnit.MILLISECONDS)) {
+            assertTrue(authorizer.isAuthorized(ALICE, REQUIRED));
+            assertEquals(1, authorizer.getBulkCallCount());
+        }
+    }
+
+    @Test
+    public void failed_bulk_lookups_deny_the_whole_batch() throws Exception {
+        AsyncCookieAuthorizer failing = new Bulk() {
+            @Override
+            public CompletionStage<Map<Principal, Boolean>> isAuthorized(Collection<Principal> principals, CookieAuth cookieAuth) {
+                throw new IllegalStateException("down");
+            }
+        };
+        try (CoalescingCookieAuthorizer authorizer = new CoalescingCookieAuthorizer(failing, 10, 1, 2, TimeUnit.SECONDS)) {
+            Future<Boolean> alice = callers.submit(() -> authorizer.isAuthorized(ALICE, REQUIRED));
+            Future<Boolean> bob = callers.submit(() -> authorizer.isAuthorized(BOB, REQUIRED));
+            assertFalse(alice.get(10, TimeUnit.SECONDS));
+            assertFalse(bob.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Only authorizes alice, and only answers bulk lookups
+     */
+    private static class Bulk implements AsyncCookieAuthorizer {
+
+        final List<Set<Principal>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletionStage<Boolean> isAuthorized(Principal principal, CookieAuth cookieAuth) {
+            throw new AssertionError("single lookup");
+        }
+
+        @Override
+        public CompletionStage<Map<Principal, Boolean>> isAuthorized(Collection<Principal> principals, CookieAuth cookieAuth) {
+            batches.add(new HashSet<>(principals));
+            Map<Principal, Boolean> decisions = new HashMap<>();
+            for (Principal principal : principals) {
+                decisions.put(principal, principal.equals(ALICE));
+            }
+            return CompletableFuture.completedFuture(decisions);
+        }
+    }
+
+}
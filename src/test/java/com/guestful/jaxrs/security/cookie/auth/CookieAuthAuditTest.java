@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieAuthAuditTest {
+
+    @Test
+    public void ring_keeps_order_and_rejects_when_full() {
+        AuditRing ring = new AuditRing(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(CookieAuthEvent.Type.LOGIN, "r", "p" + i, i));
+        }
+        assertFalse(ring.offer(CookieAuthEvent.Type.LOGIN, "r", "p4", 4));
+        List<CookieAuthEvent> batch = new ArrayList<>();
+        assertEquals(2, ring.drain(batch, 2));
+        assertEquals("p0", batch.get(0).getPrincipal());
+        assertEquals("p1", batch.get(1).getPrincipal());
+        // drained slots are free again
+        assertTrue(ring.offer(CookieAuthEvent.Type.LOGOUT, "r", "p4", 4));
+        batch.clear();
+        assertEquals(3, ring.drain(batch, 10));
+        assertEquals("p4", batch.get(2).getPrincipal());
+        assertEquals(CookieAuthEvent.Type.LOGOUT, batch.get(2).getType());
+        assertEquals(0, ring.drain(batch, 10));
+    }
+
+    @Test
+    public void close_writes_pending_events_and_closes_sinks() throws Exception {
+        CountingSink sink = new CountingSink();
+        CookieAuthAudit audit = CookieAuthAudit.start(1024, CookieAuthAudit.Overflow.BLOCK, sink);
+        for (int i = 0; i < 10000; i++) {
+            audit.onLogin("r", new NamedPrincipal("p" + i));
+        }
+        audit.close();
+        assertEquals(10000, sink.events.sum());
+        assertEquals(10000, audit.getWritten());
+        assertEquals(0, audit.getDropped());
+        assertTrue(sink.closed);
+        // published after close
+        audit.onDenied("r", new NamedPrincipal("late"));
+        assertEquals(1, audit.getDropped());
+        assertEquals(10000, sink.events.sum());
+    }
+
+    @Test
+    public void events_published_during_close_are_written_or_dropped() throws Exception {
+        for (CookieAuthAudit.Overflow overflow : CookieAuthAudit.Overflow.values()) {
+            CountingSink sink = new CountingSink();
+            CookieAuthAudit audit = CookieAuthAudit.start(64, overflow, sink);
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicInteger published = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(4);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    started.countDown();
+                    while (!stop.get()) {
+                        audit.onDecryptFailure("r");
+                        published.incrementAndGet();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            started.await();
+            Thread.sleep(20);
+            audit.close();
+            stop.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(published.get(), audit.getWritten() + audit.getDropped());
+            assertEquals(audit.getWritten(), sink.events.sum());
+        }
+    }
+
+    private static final class CountingSink implements CookieAuthEventSink {
+        final LongAdder events = new LongAdder();
+        volatile boolean closed;
+
+        @Override
+        public void write(List<CookieAuthEvent> batch) {
+            events.add(batch.size());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
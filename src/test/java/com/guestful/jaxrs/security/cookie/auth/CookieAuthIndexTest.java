@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiles a resource with {@link CookieAuthProcessor} and reads it with the generated index.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieAuthIndexTest {
+
+    private static final String SOURCE = "package test;\n" +
+        "import com.guestful.jaxrs.security.cookie.auth.CookieAuth;\n" +
+        "public class Resource {\n" +
+        "    @CookieAuth(realm = \"a\") public void get(String id) {}\n" +
+        "    @CookieAuth(realm = \"b\", optional = true, lazy = true) public void get(int id) {}\n" +
+        "    public void get(long id) {}\n" +
+        "    @CookieAuth(realm = \"a\") public void list() {}\n" +
+        "    @CookieAuth(realm = \"a\") public void put(String id) {}\n" +
+        "    @CookieAuth(realm = \"a\") public void put(int id) {}\n" +
+        "    public void open() {}\n" +
+        "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private URLClassLoader loader;
+    private Class<?> resource;
+
+    @Before
+    public void compile() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File out = folder.getRoot();
+        String classpath = new File(CookieAuth.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+            Arrays.asList("-d", out.getPath(), "-classpath", classpath),
+            null,
+            Collections.singleton(new SimpleJavaFileObject(URI.create("string:///test/Resource.java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return SOURCE;
+                }
+            }));
+        task.setProcessors(Collections.singleton(new CookieAuthProcessor()));
+        assertTrue(task.call());
+        loader = new URLClassLoader(new URL[]{out.toURI().toURL()}, getClass().getClassLoader());
+        resource = loader.loadClass("test.Resource");
+    }
+
+    @Test
+    public void ambiguous_overloads_are_read_by_reflection() throws Exception {
+        Properties entries = new Properties();
+        try (InputStream is = new FileInputStream(new File(folder.getRoot(), CookieAuthIndex.LOCATION))) {
+            entries.load(is);
+        }
+        assertEquals("", entries.getProperty("test.Resource"));
+        assertEquals(CookieAuthIndex.REFLECT, entries.getProperty("test.Resource#get/1"));
+        assertEquals("false,false,a", entries.getProperty("test.Resource#list/0"));
+        // overloads with the same annotation are not ambiguous
+        assertEquals("false,false,a", entries.getProperty("test.Resource#put/1"));
+        assertNull(entries.getProperty("test.Resource#open/0"));
+
+        CookieAuthIndex index = CookieAuthIndex.load(loader);
+        assertEquals(new CookieAuthIndex.IndexedCookieAuth("a", false, false), find(index, "get", String.class));
+        assertEquals(new CookieAuthIndex.IndexedCookieAuth("b", true, true), find(index, "get", int.class));
+        assertNull(find(index, "get", long.class));
+    }
+
+    @Test
+    public void indexed_annotations_equal_the_declared_ones() throws Exception {
+        CookieAuthIndex index = CookieAuthIndex.load(loader);
+        for (String method : new String[]{"list", "open"}) {
+            CookieAuth declared = resource.getMethod(method).getAnnotation(CookieAuth.class);
+            CookieAuth indexed = find(index, method);
+            assertEquals(declared, indexed);
+            if (declared != null) {
+                assertNotSame(declared, indexed);
+                assertEquals(declared.hashCode(), indexed.hashCode());
+                assertEquals(indexed, declared);
+            }
+        }
+    }
+
+    @Test
+    public void classes_not_indexed_are_read_by_reflection() throws Exception {
+        CookieAuthIndex index = CookieAuthIndex.load(getClass().getClassLoader());
+        CookieAuth cookieAuth = index.find(resource, resource.getMethod("get", int.class));
+        assertSame(resource.getMethod("get", int.class).getAnnotation(CookieAuth.class), cookieAuth);
+    }
+
+    private CookieAuth find(CookieAuthIndex index, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return index.find(resource, resource.getMethod(name, parameterTypes));
+    }
+
+}
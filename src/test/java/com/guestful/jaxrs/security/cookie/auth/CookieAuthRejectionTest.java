@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import javax.ws.rs.NotAuthorizedException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieAuthRejectionTest {
+
+    private static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    private static final String ALICE = "AAECAwQFBgcICQoLDA0ODw";
+    private static final String BOB = "Dw4NDAsKCQgHBgUEAwIBAA";
+    private static final String CHALLENGE = "GBASICAUTH realm=\"" + StubRequestContext.BASE_URI + "\"";
+
+    private final CookieAuthFeature feature = new CookieAuthFeature();
+
+    {
+        feature.cookieAuthorizer = (principal, cookieAuth) -> principal.getName().equals(ALICE);
+    }
+
+    @Test
+    public void rejections_throw_by_default() throws IOException {
+        CookieAuthRealmConfig config = config();
+        for (StubRequestContext request : rejected(config)) {
+            try {
+                filter(config, false).filter(request);
+                fail();
+            } catch (NotAuthorizedException e) {
+                assertEquals(401, e.getResponse().getStatus());
+                assertEquals(CHALLENGE, e.getResponse().getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+            }
+            assertNull(request.getCookieSubject());
+        }
+    }
+
+    @Test
+    public void rejections_can_abort() throws IOException {
+        CookieAuthRealmConfig config = config().setAbortRejections(true);
+        for (StubRequestContext request : rejected(config)) {
+            filter(config, false).filter(request);
+            Response response = request.getAbortResponse();
+            assertEquals(401, response.getStatus());
+            assertEquals(CHALLENGE, response.getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+            assertNull(request.getCookieSubject());
+        }
+    }
+
+    @Test
+    public void optional_accesses_are_anonymous() throws IOException {
+        for (CookieAuthRealmConfig config : Arrays.asList(config(), config().setAbortRejections(true))) {
+            for (StubRequestContext request : rejected(config)) {
+                filter(config, true).filter(request);
+                assertNull(request.getAbortResponse());
+                assertTrue(request.getCookieSubject().isAnonymous());
+                assertNull(request.getSecurityContext().getUserPrincipal());
+            }
+        }
+    }
+
+    @Test
+    public void accepted_requests_are_not_aborted() throws IOException {
+        CookieAuthRealmConfig config = config().setAbortRejections(true);
+        StubRequestContext request = new StubRequestContext("secured").cookie("c", token(config, ALICE, System.currentTimeMillis()));
+        filter(config, false).filter(request);
+        assertNull(request.getAbortResponse());
+        assertEquals(ALICE, request.getCookieSubject().getPrincipal().getName());
+    }
+
+    @Test
+    public void unknown_hosts_are_rejected_like_other_requests() throws IOException {
+        CookieAuthRealmConfigs configs = new CookieAuthRealmConfigs().add(config().addHost("example.com"));
+        StubRequestContext request = new StubRequestContext("secured").host("example.org");
+        try {
+            byHost(configs, false).filter(request);
+            fail();
+        } catch (NotAuthorizedException e) {
+            assertEquals(CHALLENGE, e.getResponse().getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+        }
+        assertNull(request.getCookieSubject());
+
+        configs.setAbortRejections(true);
+        request = new StubRequestContext("secured").host("example.org");
+        byHost(configs, false).filter(request);
+        assertEquals(401, request.getAbortResponse().getStatus());
+        assertNull(request.getCookieSubject());
+    }
+
+    @Test
+    public void unknown_hosts_are_anonymous_for_optional_accesses() throws IOException {
+        CookieAuthRealmConfigs configs = new CookieAuthRealmConfigs().add(config().addHost("example.com"));
+        String token = token(config(), ALICE, System.currentTimeMillis());
+        StubRequestContext request = new StubRequestContext("secured").host("example.org").cookie("c", token);
+        CookieAuthFeature.CookieAuthFilter filter = byHost(configs, true);
+        filter.filter(request);
+        assertNull(request.getAbortResponse());
+        assertTrue(request.getCookieSubject().isAnonymous());
+        StubResponseContext response = new StubResponseContext();
+        filter.filter(request, response);
+        assertTrue(response.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void the_realm_of_the_host_is_given_to_the_authorizer() throws IOException {
+        CookieAuthRealmConfigs configs = new CookieAuthRealmConfigs()
+            .add(config().addHost("example.com"))
+            .add(new CookieAuthRealmConfig().setRealName("local").setCookieName("l").setEncryptionKey(KEY).addHost("localhost"));
+        List<CookieAuth> authorized = new ArrayList<>();
+        feature.cookieAuthorizer = (principal, cookieAuth) -> authorized.add(cookieAuth);
+
+        StubRequestContext request = new StubRequestContext("secured").host("www.example.com").cookie("c", token(config(), ALICE, System.currentTimeMillis()));
+        byHost(configs, false).filter(request);
+        assertEquals(ALICE, request.getCookieSubject().getPrincipal().getName());
+        // without Host header, the host of the request URI
+        request = new StubRequestContext("secured").cookie("l", token(config(), BOB, System.currentTimeMillis()));
+        byHost(configs, false).filter(request);
+        assertEquals(BOB, request.getCookieSubject().getPrincipal().getName());
+
+        assertEquals(Arrays.<CookieAuth>asList(new CookieAuthIndex.IndexedCookieAuth("r", false, false), new CookieAuthIndex.IndexedCookieAuth("local", false, false)), authorized);
+    }
+
+    @Test
+    public void challenges_are_cached_per_base_uri() {
+        URI baseUri = URI.create("http://example.com/app/");
+        String challenge = CookieAuthRealm.challenge(baseUri);
+        assertEquals("GBASICAUTH realm=\"http://example.com/app/\"", challenge);
+        assertSame(challenge, CookieAuthRealm.challenge(URI.create("http://example.com/app/")));
+    }
+
+    /**
+     * @return requests without token, with an expired token, and with the token of a principal not authorized
+     */
+    private List<StubRequestContext> rejected(CookieAuthRealmConfig config) {
+        return Arrays.asList(
+            new StubRequestContext("secured"),
+            new StubRequestContext("secured").cookie("c", token(config, ALICE, System.currentTimeMillis() - 120000)),
+            new StubRequestContext("secured").cookie("c", token(config, BOB, System.currentTimeMillis())));
+    }
+
+    private CookieAuthRealmConfig config() {
+        return new CookieAuthRealmConfig().setRealName("r").setCookieName("c").setEncryptionKey(KEY);
+    }
+
+    private CookieAuthFeature.CookieAuthFilter filter(CookieAuthRealmConfig config, boolean optional) {
+        return feature.new CookieAuthFilter(config, new CookieAuthIndex.IndexedCookieAuth("r", optional, false));
+    }
+
+    private CookieAuthFeature.CookieAuthFilter byHost(CookieAuthRealmConfigs configs, boolean optional) {
+        return feature.new CookieAuthFilter(configs, new CookieAuthIndex.IndexedCookieAuth(CookieAuth.BY_HOST, optional, false));
+    }
+
+    private String token(CookieAuthRealmConfig config, String id, long time) {
+        return CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(id), TokenClaims.NONE, time).encrypt(CookieAuthRealm.compile(config, null).getKeyring());
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.NewCookie;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieRefreshPolicyTest {
+
+    private static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    private static final String NEW_KEY = "0718293A4B5C6D7E8F908F1C2B7A4D3E9F60A1B2C3D4E5F6";
+    private static final String ID = "AAECAwQFBgcICQoLDA0ODw";
+    private static final String OTHER_ID = "Dw4NDAsKCQgHBgUEAwIBAA";
+
+    private final CookieAuthFeature feature = new CookieAuthFeature();
+
+    {
+        feature.cookieAuthorizer = (principal, cookieAuth) -> true;
+    }
+
+    @Test
+    public void policies() {
+        assertTrue(CookieRefreshPolicy.always().shouldRefresh(1000, 1000, 60));
+        assertFalse(CookieRefreshPolicy.never().shouldRefresh(0, 120000, 60));
+        CookieRefreshPolicy half = CookieRefreshPolicy.olderThan(50);
+        assertFalse(half.shouldRefresh(0, 29999, 60));
+        assertTrue(half.shouldRefresh(0, 30000, 60));
+        assertTrue(CookieRefreshPolicy.olderThan(0).shouldRefresh(1000, 1000, 60));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bad_percentage() {
+        CookieRefreshPolicy.olderThan(101);
+    }
+
+    @Test
+    public void valid_tokens_are_reissued_by_default() throws IOException {
+        NewCookie cookie = respond(config(), KEY, 10000).getCookies().get("c");
+        assertNotNull(cookie);
+        assertEquals(ID, decrypt(cookie).principal.getName());
+    }
+
+    @Test
+    public void never_keeps_valid_tokens() throws IOException {
+        assertNull(respond(config().setRefreshPolicy(CookieRefreshPolicy.never()), KEY, 10000).getCookies().get("c"));
+    }
+
+    @Test
+    public void older_than_only_refreshes_old_tokens() throws IOException {
+        CookieAuthRealmConfig config = config().setRefreshPolicy(CookieRefreshPolicy.olderThan(50));
+        assertNull(respond(config, KEY, 10000).getCookies().get("c"));
+        NewCookie cookie = respond(config, KEY, 40000).getCookies().get("c");
+        assertNotNull(cookie);
+        CookieAuthFeature.StoredPrincipal storedPrincipal = decrypt(cookie);
+        assertEquals(ID, storedPrincipal.principal.getName());
+        assertTrue(System.currentTimeMillis() - storedPrincipal.time < 10000);
+    }
+
+    @Test
+    public void tokens_of_an_inactive_key_are_refreshed_with_the_active_key() throws IOException {
+        CookieAuthRealmConfig config = config()
+            .addEncryptionKey(1, NEW_KEY)
+            .setActiveKeyVersion(1)
+            .setRefreshPolicy(CookieRefreshPolicy.never());
+        NewCookie cookie = respond(config, KEY, 10000).getCookies().get("c");
+        assertNotNull(cookie);
+        assertEquals(1, CookieAuthFeature.StoredPrincipal.decrypt(CookieAuthRealm.compile(config, null).getKeyring(), cookie.getValue()).keyVersion);
+        // tokens of the active key are kept
+        assertNull(respond(config, NEW_KEY, 10000).getCookies().get("c"));
+    }
+
+    @Test
+    public void login_and_logout_replace_the_token_whatever_the_policy() throws IOException {
+        CookieAuthRealmConfig config = config().setRefreshPolicy(CookieRefreshPolicy.never());
+
+        CookieAuthFeature.CookieAuthFilter filter = filter(config);
+        StubRequestContext request = request(KEY, 10000);
+        filter.filter(request);
+        request.getCookieSubject().login(new NamedPrincipal(OTHER_ID));
+        StubResponseContext response = new StubResponseContext();
+        filter.filter(request, response);
+        CookieAuthFeature.StoredPrincipal storedPrincipal = decrypt(response.getCookies().get("c"));
+        assertEquals(OTHER_ID, storedPrincipal.principal.getName());
+
+        request = request(KEY, 10000);
+        filter.filter(request);
+        request.getCookieSubject().logout();
+        response = new StubResponseContext();
+        filter.filter(request, response);
+        assertEquals("delete", response.getCookies().get("c").getValue());
+        assertEquals(0, response.getCookies().get("c").getMaxAge());
+    }
+
+    private CookieAuthRealmConfig config() {
+        return new CookieAuthRealmConfig().setRealName("r").setCookieName("c").setEncryptionKey(KEY);
+    }
+
+    private CookieAuthFeature.CookieAuthFilter filter(CookieAuthRealmConfig config) {
+        return feature.new CookieAuthFilter(config, new CookieAuthIndex.IndexedCookieAuth("r", false, false));
+    }
+
+    private StubRequestContext request(String key, long age) {
+        Keyring keyring = CookieAuthRealm.compile(config().setEncryptionKey(key), null).getKeyring();
+        String token = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(ID), TokenClaims.NONE, System.currentTimeMillis() - age).encrypt(keyring);
+        return new StubRequestContext("secured").cookie("c", token);
+    }
+
+    private StubResponseContext respond(CookieAuthRealmConfig config, String key, long age) throws IOException {
+        CookieAuthFeature.CookieAuthFilter filter = filter(config);
+        StubRequestContext request = request(key, age);
+        filter.filter(request);
+        assertNull(request.getAbortResponse());
+        StubResponseContext response = new StubResponseContext();
+        filter.filter(request, response);
+        return response;
+    }
+
+    private CookieAuthFeature.StoredPrincipal decrypt(NewCookie cookie) {
+        return CookieAuthFeature.StoredPrincipal.decrypt(CookieAuthRealm.compile(config().addEncryptionKey(1, NEW_KEY), null).getKeyring(), cookie.getValue());
+    }
+
+}
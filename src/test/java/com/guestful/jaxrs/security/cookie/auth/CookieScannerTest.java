@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class CookieScannerTest {
+
+    @Test
+    public void finds_the_cookie_among_others() {
+        assertEquals("v", CookieScanner.find("c=v", "c"));
+        assertEquals("v", CookieScanner.find("a=1; c=v; b=2", "c"));
+        assertEquals("v", CookieScanner.find("a=1;c=v", "c"));
+        assertEquals("v", CookieScanner.find("a=1, c=v", "c"));
+        assertEquals("v", CookieScanner.find("  c  =  v  ;", "c"));
+        assertEquals("", CookieScanner.find("c=; a=1", "c"));
+    }
+
+    @Test
+    public void names_must_match_exactly() {
+        assertNull(CookieScanner.find("cc=v; xc=v; C=v", "c"));
+        assertNull(CookieScanner.find("a=c=v", "c"));
+        assertNull(CookieScanner.find("c; a=1", "c"));
+        assertNull(CookieScanner.find("", "c"));
+        assertEquals("v", CookieScanner.find("cc=x; c=v", "c"));
+    }
+
+    @Test
+    public void values_may_contain_equal_signs() {
+        assertEquals("a=b==", CookieScanner.find("c=a=b==", "c"));
+    }
+
+    @Test
+    public void quoted_values_are_unquoted() {
+        assertEquals("v", CookieScanner.find("c=\"v\"", "c"));
+        assertEquals("a;b,c", CookieScanner.find("x=\"1;c=2\"; c=\"a;b,c\"", "c"));
+        assertEquals("\"", CookieScanner.find("c=\"", "c"));
+    }
+
+    @Test
+    public void attributes_are_skipped() {
+        assertEquals("v", CookieScanner.find("$Version=1; c=v; $Path=/", "c"));
+        assertNull(CookieScanner.find("$Version=1; $c=v", "c"));
+    }
+
+    @Test
+    public void first_pair_wins() {
+        assertEquals("1", CookieScanner.find("c=1; c=2", "c"));
+    }
+
+    @Test
+    public void all_headers_are_scanned() {
+        assertEquals("v", CookieScanner.find(new StubRequestContext("secured").cookie("a", "1").cookie("c", "v"), "c"));
+        assertEquals("1", CookieScanner.find(new StubRequestContext("secured").cookie("c", "1").cookie("c", "2"), "c"));
+        assertNull(CookieScanner.find(new StubRequestContext("secured").cookie("a", "1"), "c"));
+        assertNull(CookieScanner.find(new StubRequestContext("secured"), "c"));
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class HostSuffixTrieTest {
+
+    @Test
+    public void matches_domain_and_sub_domains_only() {
+        HostSuffixTrie<String> trie = trie("example.com", "E");
+        assertEquals("E", trie.match("example.com"));
+        assertEquals("E", trie.match("www.example.com"));
+        assertEquals("E", trie.match("a.b.example.com"));
+        assertNull(trie.match("badexample.com"));
+        assertNull(trie.match("example.org"));
+        assertNull(trie.match("com"));
+        assertNull(trie.match(""));
+    }
+
+    @Test
+    public void most_specific_domain_wins() {
+        HostSuffixTrie<String> trie = trie("example.com", "E", "shop.example.com", "S", "eu.shop.example.com", "EU");
+        assertEquals("E", trie.match("www.example.com"));
+        assertEquals("S", trie.match("shop.example.com"));
+        assertEquals("S", trie.match("us.shop.example.com"));
+        assertEquals("EU", trie.match("eu.shop.example.com"));
+        assertEquals("EU", trie.match("www.eu.shop.example.com"));
+        assertEquals("E", trie.match("shops.example.com"));
+    }
+
+    @Test
+    public void star_matches_any_host() {
+        HostSuffixTrie<String> trie = trie("*", "ANY", "example.com", "E");
+        assertEquals("E", trie.match("www.example.com"));
+        assertEquals("ANY", trie.match("example.org"));
+        assertEquals("ANY", trie.match("localhost"));
+        assertEquals("ANY", trie.match(""));
+    }
+
+    @Test
+    public void ports_are_ignored() {
+        HostSuffixTrie<String> trie = trie("example.com", "E");
+        assertEquals("E", trie.match("example.com:8080"));
+        assertEquals("E", trie.match("www.example.com:443"));
+        assertNull(trie.match("example.org:8080"));
+    }
+
+    @Test
+    public void ipv6_hosts_only_match_star() {
+        assertNull(trie("example.com", "E").match("[::1]:8080"));
+        assertEquals("ANY", trie("*", "ANY").match("[2001:db8::1]"));
+    }
+
+    @Test
+    public void case_and_trailing_dots_are_ignored() {
+        HostSuffixTrie<String> trie = trie("Example.COM.", "E", "*.Shop.example.com", "S", ".other.com", "O");
+        assertEquals("E", trie.match("WWW.EXAMPLE.com"));
+        assertEquals("E", trie.match("example.com."));
+        assertEquals("S", trie.match("shop.EXAMPLE.com"));
+        assertEquals("S", trie.match("a.SHOP.example.com"));
+        assertEquals("O", trie.match("other.com"));
+    }
+
+    @Test
+    public void internationalized_domains_match_their_punycode() {
+        HostSuffixTrie<String> trie = trie("b\u00fccher.example", "B", "xn--caf-dma.example", "C");
+        assertEquals("B", trie.match("xn--bcher-kva.example"));
+        assertEquals("B", trie.match("www.XN--BCHER-KVA.example:8080"));
+        assertEquals("C", trie.match("xn--caf-dma.example"));
+        assertNull(trie.match("bucher.example"));
+    }
+
+    @Test
+    public void unknown_host() {
+        HostSuffixTrie<String> trie = trie("example.com", "E");
+        assertNull(trie.match("unknown.org"));
+        assertNull(trie.match("localhost"));
+        assertNull(trie.match("127.0.0.1"));
+        CookieAuthRealmConfigs configs = new CookieAuthRealmConfigs().add(new CookieAuthRealmConfig()
+            .setRealName("r")
+            .setCookieName("c")
+            .setEncryptionKey("8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90")
+            .addHost("example.com"));
+        assertEquals("r", configs.getRealmByHost("www.example.com").getName());
+        assertNull(configs.getRealmByHost("unknown.org"));
+        assertNull(configs.getRealmByHost(null));
+    }
+
+    @Test
+    public void empty_trie() {
+        HostSuffixTrie<String> trie = HostSuffixTrie.compile(Collections.<String, String>emptyMap());
+        assertTrue(trie.isEmpty());
+        assertNull(trie.match("example.com"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void same_domain_cannot_have_two_values() {
+        trie("example.com", "A", "EXAMPLE.com.", "B");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_empty_labels() {
+        trie("www..example.com", "A");
+    }
+
+    private static HostSuffixTrie<String> trie(String... domainsAndValues) {
+        Map<String, String> domains = new LinkedHashMap<>();
+        for (int i = 0; i < domainsAndValues.length; i += 2) {
+            domains.put(domainsAndValues[i], domainsAndValues[i + 1]);
+        }
+        return HostSuffixTrie.compile(domains);
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class LazyCookieSubjectTest {
+
+    private static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    private static final String ID = "AAECAwQFBgcICQoLDA0ODw";
+
+    private final AtomicInteger authorizations = new AtomicInteger();
+    private final CookieAuthFeature feature = new CookieAuthFeature();
+    private final CookieAuthRealmConfig config = new CookieAuthRealmConfig().setRealName("r").setCookieName("c").setEncryptionKey(KEY);
+
+    {
+        feature.cookieAuthorizer = (principal, cookieAuth) -> {
+            authorizations.incrementAndGet();
+            return true;
+        };
+    }
+
+    @Test
+    public void token_is_only_read_when_the_subject_is_used() throws IOException {
+        CookieAuthFeature.CookieAuthFilter filter = filter(true, true);
+        StubRequestContext request = new StubRequestContext("secured").cookie("c", token());
+        filter.filter(request);
+        CookieSubject cookieSubject = request.getCookieSubject();
+        assertFalse(cookieSubject.isResolved());
+        assertEquals(0, authorizations.get());
+
+        assertEquals(ID, cookieSubject.getPrincipal().getName());
+        assertTrue(cookieSubject.isResolved());
+        assertFalse(cookieSubject.isAnonymous());
+        assertEquals(ID, request.getSecurityContext().getUserPrincipal().getName());
+        assertEquals(1, authorizations.get());
+
+        StubResponseContext response = new StubResponseContext();
+        filter.filter(request, response);
+        assertEquals(ID, CookieAuthFeature.StoredPrincipal.decrypt(CookieAuthRealm.compile(config, null).getKeyring(), response.getCookies().get("c").getValue()).principal.getName());
+    }
+
+    @Test
+    public void unused_subjects_leave_the_cookie_untouched() throws IOException {
+        CookieAuthFeature.CookieAuthFilter filter = filter(true, true);
+        for (String token : new String[]{token(), "garbage"}) {
+            StubRequestContext request = new StubRequestContext("secured").cookie("c", token);
+            filter.filter(request);
+            StubResponseContext response = new StubResponseContext();
+            filter.filter(request, response);
+            assertTrue(response.getHeaders().isEmpty());
+        }
+        assertEquals(0, authorizations.get());
+    }
+
+    @Test
+    public void bad_tokens_resolve_to_anonymous_and_are_deleted() throws IOException {
+        CookieAuthFeature.CookieAuthFilter filter = filter(true, true);
+        StubRequestContext request = new StubRequestContext("secured").cookie("c", "garbage");
+        filter.filter(request);
+        assertTrue(request.getCookieSubject().isAnonymous());
+        StubResponseContext response = new StubResponseContext();
+        filter.filter(request, response);
+        assertEquals("delete", response.getCookies().get("c").getValue());
+    }
+
+    @Test
+    public void login_before_use_skips_the_token() throws IOException {
+        CookieAuthFeature.CookieAuthFilter filter = filter(true, true);
+        StubRequestContext request = new StubRequestContext("secured").cookie("c", token());
+        filter.filter(request);
+        request.getCookieSubject().login(new NamedPrincipal("Dw4NDAsKCQgHBgUEAwIBAA"));
+        assertEquals("Dw4NDAsKCQgHBgUEAwIBAA", request.getCookieSubject().getPrincipal().getName());
+        assertEquals(0, authorizations.get());
+    }
+
+    @Test
+    public void required_accesses_are_never_lazy() throws IOException {
+        CookieAuthFeature.CookieAuthFilter filter = filter(false, true);
+        StubRequestContext request = new StubRequestContext("secured").cookie("c", token());
+        filter.filter(request);
+        assertEquals(1, authorizations.get());
+        assertTrue(request.getCookieSubject().isResolved());
+        assertEquals(ID, request.getCookieSubject().getPrincipal().getName());
+    }
+
+    private CookieAuthFeature.CookieAuthFilter filter(boolean optional, boolean lazy) {
+        return feature.new CookieAuthFilter(config, new CookieAuthIndex.IndexedCookieAuth("r", optional, lazy));
+    }
+
+    private String token() {
+        return CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(ID)).encrypt(CookieAuthRealm.compile(config, null).getKeyring());
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class PathPrefixTrieTest {
+
+    @Test
+    public void matches_whole_segments_only() {
+        PathPrefixTrie<String> trie = trie("/api", "A");
+        assertEquals("A", trie.match("api"));
+        assertEquals("A", trie.match("/api"));
+        assertEquals("A", trie.match("api/"));
+        assertEquals("A", trie.match("api/users/1"));
+        assertNull(trie.match("apix"));
+        assertNull(trie.match("/apix/users"));
+        assertNull(trie.match("ap"));
+        assertNull(trie.match(""));
+        assertNull(trie.match("other/api"));
+    }
+
+    @Test
+    public void prefix_ending_with_slash_matches_below_it_only() {
+        PathPrefixTrie<String> trie = trie("/api/", "A");
+        assertEquals("A", trie.match("api/users"));
+        assertNull(trie.match("api"));
+        assertNull(trie.match("apix/users"));
+    }
+
+    @Test
+    public void longest_prefix_wins() {
+        PathPrefixTrie<String> trie = trie("/api", "A", "/api/admin", "B", "/api/admin/public", "C");
+        assertEquals("A", trie.match("api/users"));
+        assertEquals("B", trie.match("api/admin"));
+        assertEquals("B", trie.match("api/admin/users"));
+        assertEquals("A", trie.match("api/administrators"));
+        assertEquals("C", trie.match("api/admin/public/x"));
+        assertEquals("B", trie.match("api/admin/publicity"));
+    }
+
+    @Test
+    public void root_matches_everything() {
+        PathPrefixTrie<String> trie = trie("/", "R", "/api", "A");
+        assertEquals("R", trie.match(""));
+        assertEquals("R", trie.match("apix"));
+        assertEquals("A", trie.match("api/x"));
+    }
+
+    @Test
+    public void leading_slashes_are_ignored() {
+        PathPrefixTrie<String> trie = trie("//api", "A");
+        assertEquals("A", trie.match("///api/x"));
+    }
+
+    @Test
+    public void empty_trie() {
+        PathPrefixTrie<String> trie = PathPrefixTrie.compile(Collections.<String, String>emptyMap());
+        assertTrue(trie.isEmpty());
+        assertNull(trie.match("api"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void same_prefix_cannot_have_two_values() {
+        trie("/api", "A", "api", "B");
+    }
+
+    private static PathPrefixTrie<String> trie(String... prefixesAndValues) {
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        for (int i = 0; i < prefixesAndValues.length; i += 2) {
+            prefixes.put(prefixesAndValues[i], prefixesAndValues[i + 1]);
+        }
+        return PathPrefixTrie.compile(prefixes);
+    }
+
+}
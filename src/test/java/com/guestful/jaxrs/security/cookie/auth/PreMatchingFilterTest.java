@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import javax.ws.rs.NotAuthorizedException;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class PreMatchingFilterTest {
+
+    private static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    private static final String ID = "AAECAwQFBgcICQoLDA0ODw";
+
+    private final CookieAuthFeature feature = new CookieAuthFeature();
+    private final CookieAuthRealmConfig config = new CookieAuthRealmConfig()
+        .setRealName("r")
+        .setCookieName("c")
+        .setEncryptionKey(KEY)
+        .addPreMatchingPath("admin");
+
+    {
+        feature.configs = new CookieAuthRealmConfigs().add(config);
+        feature.cookieAuthorizer = (principal, cookieAuth) -> true;
+    }
+
+    @Test
+    public void other_paths_are_not_checked() throws IOException {
+        StubRequestContext request = new StubRequestContext("public/admin");
+        feature.new PreMatchingFilter().filter(request);
+        assertNull(request.getAbortResponse());
+        assertNull(request.getProperty(realm().getPreMatchedProperty()));
+    }
+
+    @Test
+    public void requests_without_a_valid_token_are_rejected() throws IOException {
+        for (StubRequestContext request : new StubRequestContext[]{
+            new StubRequestContext("admin/users"),
+            new StubRequestContext("admin").cookie("c", "garbage"),
+            new StubRequestContext("admin/users").cookie("c", token(System.currentTimeMillis() - 120000))}) {
+            try {
+                feature.new PreMatchingFilter().filter(request);
+                fail();
+            } catch (NotAuthorizedException e) {
+                assertEquals(401, e.getResponse().getStatus());
+            }
+            assertNull(request.getProperty(realm().getPreMatchedProperty()));
+        }
+        assertEquals(1, realm().getMetrics().getCookiesMissing());
+        assertEquals(1, realm().getMetrics().getDecryptFailures());
+        assertEquals(1, realm().getMetrics().getExpiredTokens());
+    }
+
+    @Test
+    public void rejections_can_abort() throws IOException {
+        feature.configs.reload(Collections.singleton(config.setAbortRejections(true)));
+        StubRequestContext request = new StubRequestContext("admin/users");
+        feature.new PreMatchingFilter().filter(request);
+        assertEquals(401, request.getAbortResponse().getStatus());
+        assertNotNull(request.getAbortResponse().getHeaderString("WWW-Authenticate"));
+    }
+
+    @Test
+    public void valid_tokens_are_handed_to_the_filter() throws IOException {
+        StubRequestContext request = new StubRequestContext("admin/users").cookie("c", token(System.currentTimeMillis()));
+        feature.new PreMatchingFilter().filter(request);
+        assertNull(request.getAbortResponse());
+        CookieAuthFeature.StoredPrincipal storedPrincipal = (CookieAuthFeature.StoredPrincipal) request.getProperty(realm().getPreMatchedProperty());
+        assertEquals(ID, storedPrincipal.principal.getName());
+
+        feature.new CookieAuthFilter(feature.configs, new CookieAuthIndex.IndexedCookieAuth("r", false, false)).filter(request);
+        assertSame(storedPrincipal.principal, request.getCookieSubject().getPrincipal());
+        assertEquals(0, realm().getMetrics().getDecryptFailures());
+    }
+
+    @Test
+    public void the_filter_reads_the_token_of_the_pre_matching_filter() throws IOException {
+        // not decrypted again: the filter would reject this cookie
+        StubRequestContext request = new StubRequestContext("admin/users").cookie("c", "garbage");
+        CookieAuthFeature.StoredPrincipal storedPrincipal = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(ID));
+        request.setProperty(realm().getPreMatchedProperty(), storedPrincipal);
+        feature.new CookieAuthFilter(feature.configs, new CookieAuthIndex.IndexedCookieAuth("r", false, false)).filter(request);
+        assertSame(storedPrincipal.principal, request.getCookieSubject().getPrincipal());
+        assertEquals(0, realm().getMetrics().getDecryptFailures());
+    }
+
+    @Test
+    public void the_token_of_another_realm_is_not_used() throws IOException {
+        feature.configs.add(new CookieAuthRealmConfig().setRealName("other").setCookieName("o").setEncryptionKey(KEY));
+        StubRequestContext request = new StubRequestContext("admin/users").cookie("c", token(System.currentTimeMillis()));
+        feature.new PreMatchingFilter().filter(request);
+        StubRequestContext other = request.cookie("o", "garbage");
+        feature.new CookieAuthFilter(feature.configs, new CookieAuthIndex.IndexedCookieAuth("other", true, false)).filter(other);
+        assertTrue(other.getCookieSubject().isAnonymous());
+    }
+
+    private CookieAuthRealm realm() {
+        return feature.configs.getRealm("r");
+    }
+
+    private String token(long time) {
+        return CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(ID), TokenClaims.NONE, time).encrypt(realm().getKeyring());
+    }
+
+}
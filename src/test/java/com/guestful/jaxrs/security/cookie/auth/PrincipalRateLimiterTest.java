@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class PrincipalRateLimiterTest {
+
+    private static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    private static final String ALICE = "AAECAwQFBgcICQoLDA0ODw";
+    private static final String BOB = "Dw4NDAsKCQgHBgUEAwIBAA";
+    private static final long SECOND = 1_000_000_000L;
+    private static final long NOW = 100 * SECOND;
+
+    @Test
+    public void burst_then_rate() {
+        PrincipalRateLimiter limiter = new PrincipalRateLimiter(1, 3, 100);
+        assertEquals(0, limiter.acquire("a", NOW));
+        assertEquals(0, limiter.acquire("a", NOW));
+        assertEquals(0, limiter.acquire("a", NOW));
+        assertEquals(SECOND, limiter.acquire("a", NOW));
+        assertEquals(SECOND / 2, limiter.acquire("a", NOW + SECOND / 2));
+        assertEquals(0, limiter.acquire("a", NOW + SECOND));
+        assertEquals(SECOND, limiter.acquire("a", NOW + SECOND));
+        // principals have their own bucket
+        assertEquals(0, limiter.acquire("b", NOW));
+    }
+
+    @Test
+    public void idle_buckets_make_room_for_new_principals() {
+        PrincipalRateLimiter limiter = new PrincipalRateLimiter(1, 1, 1);
+        assertEquals(0, limiter.acquire("a", NOW));
+        // no room: new principals are not limited
+        assertEquals(0, limiter.acquire("b", NOW));
+        assertEquals(0, limiter.acquire("b", NOW));
+        assertEquals(1, limiter.size());
+        assertEquals(SECOND, limiter.acquire("a", NOW));
+        // the bucket of a is full again after a second
+        assertEquals(0, limiter.acquire("b", NOW + 2 * SECOND));
+        assertEquals(SECOND, limiter.acquire("b", NOW + 2 * SECOND));
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void limited_requests_are_aborted_with_429() throws IOException {
+        CookieAuthRealmConfigs configs = configs();
+        CookieAuthFeature.CookieAuthFilter filter = filter(configs, false, false);
+
+        StubRequestContext request = request(configs, ALICE);
+        filter.filter(request);
+        assertNull(request.getAbortResponse());
+        assertNotNull(request.getCookieSubject());
+
+        request = request(configs, ALICE);
+        filter.filter(request);
+        Response response = request.getAbortResponse();
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeaderString(HttpHeaders.RETRY_AFTER));
+        assertNull(request.getCookieSubject());
+        assertEquals(1, configs.getRealm("r").getMetrics().getRateLimited());
+
+        request = request(configs, BOB);
+        filter.filter(request);
+        assertNull(request.getAbortResponse());
+    }
+
+    @Test
+    public void anonymous_and_lazy_subjects_are_not_limited() throws IOException {
+        CookieAuthRealmConfigs configs = configs();
+        CookieAuthFeature.CookieAuthFilter optional = filter(configs, true, false);
+        CookieAuthFeature.CookieAuthFilter lazy = filter(configs, true, true);
+        for (int i = 0; i < 3; i++) {
+            StubRequestContext request = new StubRequestContext("secured");
+            optional.filter(request);
+            assertNull(request.getAbortResponse());
+            request = request(configs, ALICE);
+            lazy.filter(request);
+            assertNull(request.getAbortResponse());
+            assertEquals(ALICE, request.getCookieSubject().getPrincipal().getName());
+        }
+        assertEquals(0, configs.getRealm("r").getMetrics().getRateLimited());
+    }
+
+    private CookieAuthRealmConfigs configs() {
+        return new CookieAuthRealmConfigs().add(new CookieAuthRealmConfig()
+            .setRealName("r")
+            .setCookieName("c")
+            .setEncryptionKey(KEY)
+            .setRateLimit(0.5));
+    }
+
+    private CookieAuthFeature.CookieAuthFilter filter(CookieAuthRealmConfigs configs, boolean optional, boolean lazy) {
+        CookieAuthFeature feature = new CookieAuthFeature();
+        feature.cookieAuthorizer = (principal, cookieAuth) -> true;
+        return feature.new CookieAuthFilter(configs, new CookieAuthIndex.IndexedCookieAuth("r", optional, lazy));
+    }
+
+    private StubRequestContext request(CookieAuthRealmConfigs configs, String id) {
+        String token = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(id)).encrypt(configs.getRealm("r").getKeyring());
+        return new StubRequestContext("secured").cookie("c", token);
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class RevocationIndexTest {
+
+    private static final int MAX_AGE = 3600;
+
+    @Test
+    public void revokes_tokens_issued_before() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        long now = System.currentTimeMillis();
+        Principal principal = principal(1, 2);
+        index.revoke(principal, now);
+        assertTrue(index.isRevoked(1, 2, now - 1));
+        assertFalse(index.isRevoked(1, 2, now));
+        assertFalse(index.isRevoked(1, 3, now - 1));
+        assertEquals(now, index.getNotBefore(principal));
+        // not before only moves forward
+        index.revoke(principal, now - 1000);
+        assertEquals(now, index.getNotBefore(principal));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void revoke_all() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        long now = System.currentTimeMillis();
+        index.revokeAll(now);
+        index.revokeAll(now - 1000);
+        assertEquals(now, index.getNotBefore());
+        assertTrue(index.isRevoked(5, 6, now - 1));
+        assertFalse(index.isRevoked(5, 6, now));
+        assertEquals(now, index.getNotBefore(principal(5, 6)));
+    }
+
+    @Test
+    public void ids_sharing_a_half_do_not_collide() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 100; i++) {
+            index.revoke(principal(42, i), now + i);
+            index.revoke(principal(i, 42), now + 1000 + i);
+        }
+        assertEquals(199, index.size());
+        for (int i = 1; i <= 100; i++) {
+            if (i != 42) {
+                // 42/42 was revoked twice, the second time is kept
+                assertEquals(now + i, index.getNotBefore(principal(42, i)));
+            }
+            assertEquals(now + 1000 + i, index.getNotBefore(principal(i, 42)));
+        }
+        assertEquals(0, index.getNotBefore(principal(42, 101)));
+        assertEquals(0, index.getNotBefore(principal(101, 42)));
+    }
+
+    @Test
+    public void grows_and_keeps_all_entries() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        long now = System.currentTimeMillis();
+        int n = 20000;
+        for (int i = 0; i < n; i++) {
+            index.revoke(principal(i * 31L, ~i), now + i);
+        }
+        assertEquals(n, index.size());
+        for (int i = 0; i < n; i++) {
+            assertTrue(index.isRevoked(i * 31L, ~i, now + i - 1));
+            assertFalse(index.isRevoked(i * 31L, ~i, now + i));
+        }
+        for (int i = n; i < n + 1000; i++) {
+            assertFalse(index.isRevoked(i * 31L, ~i, 0));
+        }
+    }
+
+    @Test
+    public void ids_of_other_lengths_are_hashed() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        long now = System.currentTimeMillis();
+        index.revoke(new NamedPrincipal("c2hvcnQ"), now);
+        index.revoke(new NamedPrincipal("YS1tdWNoLWxvbmdlci1wcmluY2lwYWwtaWQtdGhhbi0xNi1ieXRlcw"), now + 1);
+        assertEquals(now, index.getNotBefore(new NamedPrincipal("c2hvcnQ")));
+        assertEquals(now + 1, index.getNotBefore(new NamedPrincipal("YS1tdWNoLWxvbmdlci1wcmluY2lwYWwtaWQtdGhhbi0xNi1ieXRlcw")));
+        assertEquals(0, index.getNotBefore(new NamedPrincipal("c2hvcnR4")));
+    }
+
+    @Test
+    public void prune_drops_entries_older_than_max_age() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        long now = System.currentTimeMillis();
+        index.revoke(principal(1, 1), now - MAX_AGE * 1000L - 1);
+        index.revoke(principal(2, 2), now);
+        index.prune();
+        assertEquals(1, index.size());
+        assertEquals(0, index.getNotBefore(principal(1, 1)));
+        assertEquals(now, index.getNotBefore(principal(2, 2)));
+    }
+
+    @Test
+    public void login_after_revoke_within_the_issue_time_bucket() {
+        CookieAuthRealm realm = CookieAuthRealm.compile(new CookieAuthRealmConfig()
+            .setRealName("r")
+            .setCookieName("c")
+            .setEncryptionKey("8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90")
+            .setIssueTimeBucket(MAX_AGE), null);
+        long now = System.currentTimeMillis();
+        long bucket = now - now % (MAX_AGE * 1000L);
+        Principal principal = principal(7, 8);
+        assertEquals(bucket, realm.issueTime(principal, now));
+        realm.getRevocations().revoke(principal, now);
+        // the token issued on the next login is not revoked, even if the bucket started before the revocation
+        long time = realm.issueTime(principal, now + 1);
+        assertEquals(now, time);
+        assertFalse(realm.getRevocations().isRevoked(7, 8, time));
+        assertEquals(bucket, realm.issueTime(principal(7, 9), now + 1));
+    }
+
+    @Test
+    public void empty_index_does_not_decode_principals() {
+        RevocationIndex index = new RevocationIndex(MAX_AGE);
+        assertEquals(0, index.getNotBefore(new NamedPrincipal("not*base64")));
+        long now = System.currentTimeMillis();
+        index.revokeAll(now);
+        assertEquals(now, index.getNotBefore(new NamedPrincipal("not*base64")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_bad_principals() {
+        new RevocationIndex(MAX_AGE).revoke(new NamedPrincipal("not*base64"));
+    }
+
+    private static Principal principal(long id1, long id2) {
+        byte[] id = ByteBuffer.allocate(16).putLong(id1).putLong(id2).array();
+        return new NamedPrincipal(Base64.getUrlEncoder().withoutPadding().encodeToString(id));
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.*;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Minimal {@link ContainerRequestContext} of a GET request to a path of <code>http://localhost:8080/api/</code>,
+ * keeping the response given to {@link #abortWith(Response)}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+class StubRequestContext implements ContainerRequestContext {
+
+    static final URI BASE_URI = URI.create("http://localhost:8080/api/");
+
+    private final Map<String, Object> properties = new HashMap<>();
+    private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+    private final UriInfo uriInfo;
+    private SecurityContext securityContext;
+    private Response abortResponse;
+
+    StubRequestContext(String path) {
+        URI requestUri = BASE_URI.resolve(path);
+        this.uriInfo = (UriInfo) Proxy.newProxyInstance(
+            StubRequestContext.class.getClassLoader(),
+            new Class<?>[]{UriInfo.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getBaseUri":
+                        return BASE_URI;
+                    case "getPath":
+                        return path;
+                    case "getRequestUri":
+                    case "getAbsolutePath":
+                        return requestUri;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    StubRequestContext cookie(String name, String value) {
+        headers.add(HttpHeaders.COOKIE, name + "=" + value);
+        return this;
+    }
+
+    StubRequestContext host(String host) {
+        headers.putSingle(HttpHeaders.HOST, host);
+        return this;
+    }
+
+    Response getAbortResponse() {
+        return abortResponse;
+    }
+
+    CookieSubject getCookieSubject() {
+        return (CookieSubject) properties.get(CookieSubject.class.getName());
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    public Collection<String> getPropertyNames() {
+        return properties.keySet();
+    }
+
+    @Override
+    public void setProperty(String name, Object object) {
+        properties.put(name, object);
+    }
+
+    @Override
+    public void removeProperty(String name) {
+        properties.remove(name);
+    }
+
+    @Override
+    public UriInfo getUriInfo() {
+        return uriInfo;
+    }
+
+    @Override
+    public void setRequestUri(URI requestUri) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setRequestUri(URI baseUri, URI requestUri) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Request getRequest() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getMethod() {
+        return "GET";
+    }
+
+    @Override
+    public void setMethod(String method) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public String getHeaderString(String name) {
+        List<String> values = headers.get(name);
+        if (values == null || values.isEmpty()) return null;
+        return String.join(",", values);
+    }
+
+    @Override
+    public Date getDate() {
+        return null;
+    }
+
+    @Override
+    public Locale getLanguage() {
+        return null;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return null;
+    }
+
+    @Override
+    public List<MediaType> getAcceptableMediaTypes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Locale> getAcceptableLanguages() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, Cookie> getCookies() {
+        throw new UnsupportedOperationException("the filter scans the Cookie headers");
+    }
+
+    @Override
+    public boolean hasEntity() {
+        return false;
+    }
+
+    @Override
+    public InputStream getEntityStream() {
+        return null;
+    }
+
+    @Override
+    public void setEntityStream(InputStream input) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SecurityContext getSecurityContext() {
+        return securityContext;
+    }
+
+    @Override
+    public void setSecurityContext(SecurityContext context) {
+        this.securityContext = context;
+    }
+
+    @Override
+    public void abortWith(Response response) {
+        this.abortResponse = response;
+    }
+
+}
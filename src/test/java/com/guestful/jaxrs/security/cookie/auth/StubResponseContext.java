@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.*;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Minimal {@link ContainerResponseContext}: Set-Cookie headers are parsed back on each {@link #getCookies()} call.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+class StubResponseContext implements ContainerResponseContext {
+
+    private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    private int status = 200;
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void setStatus(int code) {
+        this.status = code;
+    }
+
+    @Override
+    public Response.StatusType getStatusInfo() {
+        return Response.Status.fromStatusCode(status);
+    }
+
+    @Override
+    public void setStatusInfo(Response.StatusType statusInfo) {
+        this.status = statusInfo.getStatusCode();
+    }
+
+    @Override
+    public MultivaluedMap<String, Object> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getStringHeaders() {
+        MultivaluedMap<String, String> strings = new MultivaluedHashMap<>();
+        for (Map.Entry<String, List<Object>> entry : headers.entrySet()) {
+            for (Object value : entry.getValue()) {
+                strings.add(entry.getKey(), String.valueOf(value));
+            }
+        }
+        return strings;
+    }
+
+    @Override
+    public String getHeaderString(String name) {
+        List<Object> values = headers.get(name);
+        if (values == null || values.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public Set<String> getAllowedMethods() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Date getDate() {
+        return null;
+    }
+
+    @Override
+    public Locale getLanguage() {
+        return null;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return null;
+    }
+
+    @Override
+    public Map<String, NewCookie> getCookies() {
+        List<Object> values = headers.get(HttpHeaders.SET_COOKIE);
+        if (values == null || values.isEmpty()) return Collections.emptyMap();
+        Map<String, NewCookie> cookies = new HashMap<>();
+        for (Object value : values) {
+            NewCookie cookie = value instanceof NewCookie ? (NewCookie) value : NewCookie.valueOf(String.valueOf(value));
+            cookies.put(cookie.getName(), cookie);
+        }
+        return cookies;
+    }
+
+    @Override
+    public EntityTag getEntityTag() {
+        return null;
+    }
+
+    @Override
+    public Date getLastModified() {
+        return null;
+    }
+
+    @Override
+    public URI getLocation() {
+        return null;
+    }
+
+    @Override
+    public Set<Link> getLinks() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public boolean hasLink(String relation) {
+        return false;
+    }
+
+    @Override
+    public Link getLink(String relation) {
+        return null;
+    }
+
+    @Override
+    public Link.Builder getLinkBuilder(String relation) {
+        return null;
+    }
+
+    @Override
+    public boolean hasEntity() {
+        return false;
+    }
+
+    @Override
+    public Object getEntity() {
+        return null;
+    }
+
+    @Override
+    public Class<?> getEntityClass() {
+        return null;
+    }
+
+    @Override
+    public Type getEntityType() {
+        return null;
+    }
+
+    @Override
+    public void setEntity(Object entity) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setEntity(Object entity, Annotation[] annotations, MediaType mediaType) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Annotation[] getEntityAnnotations() {
+        return new Annotation[0];
+    }
+
+    @Override
+    public OutputStream getEntityStream() {
+        return null;
+    }
+
+    @Override
+    public void setEntityStream(OutputStream outputStream) {
+        throw new UnsupportedOperationException();
+    }
+
+}
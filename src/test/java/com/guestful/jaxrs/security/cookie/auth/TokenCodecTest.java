@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2013 Guestful (info@guestful.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.guestful.jaxrs.security.cookie.auth;
+
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public class TokenCodecTest {
+
+    private static final String KEY = "8F1C2B7A4D3E9F60A1B2C3D4E5F60718293A4B5C6D7E8F90";
+    private static final String PRINCIPAL = "n0URmCU1_KkkygLn9-1wlQ";
+
+    @Test
+    public void base64_round_trip() {
+        Random random = new Random(1);
+        for (int len = 0; len <= 64; len++) {
+            byte[] bytes = new byte[len];
+            random.nextBytes(bytes);
+            String encoded = TokenCodec.encode(bytes, 0, len);
+            assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), encoded);
+            assertEquals(TokenCodec.encodedLength(len), encoded.length());
+            byte[] decoded = new byte[len];
+            assertEquals(len, TokenCodec.decode(encoded, decoded, 0, len));
+            assertArrayEquals(bytes, decoded);
+        }
+    }
+
+    @Test
+    public void base64_accepts_padding() {
+        byte[] decoded = new byte[2];
+        assertEquals(2, TokenCodec.decode("AQI=", decoded, 0, 2));
+        assertArrayEquals(new byte[]{1, 2}, decoded);
+    }
+
+    @Test
+    public void base64_rejects_corrupted_input() {
+        byte[] dst = new byte[64];
+        // not in the URL-safe alphabet
+        assertEquals(-1, TokenCodec.decode("ab+d", dst, 0, 64));
+        assertEquals(-1, TokenCodec.decode("ab/d", dst, 0, 64));
+        assertEquals(-1, TokenCodec.decode("ab*d", dst, 0, 64));
+        assertEquals(-1, TokenCodec.decode("ab\u00e9", dst, 0, 64));
+        assertEquals(-1, TokenCodec.decode("ab\u0000d", dst, 0, 64));
+        // impossible length
+        assertEquals(-1, TokenCodec.decode("abcde", dst, 0, 64));
+        // longer than allowed, or than the destination
+        assertEquals(-1, TokenCodec.decode("abcdabcd", dst, 0, 5));
+        assertEquals(-1, TokenCodec.decode("abcdabcd", dst, 60, 64));
+        assertEquals(0, TokenCodec.decode("", dst, 0, 64));
+    }
+
+    @Test
+    public void var_long_round_trip() {
+        byte[] bytes = new byte[10];
+        for (long v : new long[]{0, 1, 127, 128, 16383, 16384, System.currentTimeMillis(), Long.MAX_VALUE, -1, Long.MIN_VALUE}) {
+            int end = TokenCodec.putVarLong(bytes, 0, v);
+            assertEquals(end, TokenCodec.varLongSize(bytes, 0, end));
+            assertEquals(v, TokenCodec.getVarLong(bytes, 0));
+            // truncated
+            assertEquals(-1, TokenCodec.varLongSize(bytes, 0, end - 1));
+        }
+    }
+
+    @Test
+    public void long_round_trip() {
+        byte[] bytes = new byte[9];
+        TokenCodec.putLong(bytes, 1, 0x0102030405060708L);
+        assertEquals(0x0102030405060708L, TokenCodec.getLong(bytes, 1));
+        TokenCodec.putLong(bytes, 1, -2);
+        assertEquals(-2, TokenCodec.getLong(bytes, 1));
+    }
+
+    @Test
+    public void token_round_trip() {
+        Keyring keyring = keyring();
+        for (TokenFormat format : TokenFormat.values()) {
+            TokenClaims claims = format == TokenFormat.LEGACY ? TokenClaims.NONE : TokenClaims.NONE.withRole(3).withTenant(42).withAuthenticated(true);
+            long time = System.currentTimeMillis() - 1000;
+            String token = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(PRINCIPAL), claims, time).encrypt(keyring, format);
+            CookieAuthFeature.StoredPrincipal read = CookieAuthFeature.StoredPrincipal.decrypt(keyring, token);
+            assertNotNull(format.name(), read);
+            assertEquals(PRINCIPAL, read.principal.getName());
+            assertEquals(time, read.time);
+            assertEquals(claims.getRoles(), read.claims.getRoles());
+            assertEquals(claims.getTenant(), read.claims.getTenant());
+            assertEquals(claims.isAuthenticated(), read.claims.isAuthenticated());
+        }
+    }
+
+    @Test
+    public void corrupted_tokens_are_rejected() {
+        Keyring keyring = keyring();
+        for (TokenFormat format : TokenFormat.values()) {
+            String token = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(PRINCIPAL), TokenClaims.NONE.withTenant(7), System.currentTimeMillis()).encrypt(keyring, format);
+            // truncated or extended
+            for (int len = 0; len < token.length(); len++) {
+                assertNull(format + " " + len, CookieAuthFeature.StoredPrincipal.decrypt(keyring, token.substring(0, len)));
+            }
+            assertNull(CookieAuthFeature.StoredPrincipal.decrypt(keyring, token + "AAAA"));
+            // not Base64
+            assertNull(CookieAuthFeature.StoredPrincipal.decrypt(keyring, token.substring(1) + "*"));
+            // too long for the scratch buffers
+            assertNull(CookieAuthFeature.StoredPrincipal.decrypt(keyring, new String(new char[1000]).replace('\0', 'A')));
+        }
+        assertNull(CookieAuthFeature.StoredPrincipal.decrypt(keyring, ""));
+    }
+
+    @Test
+    public void tokens_of_another_key_are_rejected() {
+        String token = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(PRINCIPAL)).encrypt(keyring());
+        Keyring other = CookieAuthRealm.compile(new CookieAuthRealmConfig()
+            .setRealName("other")
+            .setCookieName("c")
+            .setEncryptionKey("00112233445566778899AABBCCDDEEFF0011223344556677")
+            .setTokenCipher(TokenCipher.hmacSha256()), null).getKeyring();
+        assertNull(CookieAuthFeature.StoredPrincipal.decrypt(other, token));
+    }
+
+    @Test
+    public void authenticated_ciphers_reject_any_bit_flip() {
+        for (TokenCipher.Factory cipher : new TokenCipher.Factory[]{TokenCipher.aesGcm(), TokenCipher.hmacSha256()}) {
+            Keyring keyring = CookieAuthRealm.compile(new CookieAuthRealmConfig()
+                .setRealName("r")
+                .setCookieName("c")
+                .setEncryptionKey(KEY)
+                .setTokenCipher(cipher), null).getKeyring();
+            String token = CookieAuthFeature.StoredPrincipal.store(new NamedPrincipal(PRINCIPAL)).encrypt(keyring, TokenFormat.V1);
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            for (int i = 0; i < bytes.length * 8; i++) {
+                byte[] flipped = bytes.clone();
+                flipped[i / 8] ^= 1 << (i % 8);
+                assertNull(CookieAuthFeature.StoredPrincipal.decrypt(keyring, Base64.getUrlEncoder().withoutPadding().encodeToString(flipped)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void v1_tokens_require_an_authenticated_cipher() {
+        CookieAuthRealm.compile(new CookieAuthRealmConfig()
+            .setRealName("r")
+            .setCookieName("c")
+            .setEncryptionKey(KEY)
+            .setTokenFormat(TokenFormat.V1), null);
+    }
+
+    @Test
+    public void v1_tokens_with_an_authenticated_cipher() {
+        CookieAuthRealm realm = CookieAuthRealm.compile(new CookieAuthRealmConfig()
+            .setRealName("r")
+            .setCookieName("c")
+            .setEncryptionKey(KEY)
+            .setTokenCipher(TokenCipher.hmacSha256())
+            .setTokenFormat(TokenFormat.V1), null);
+        assertEquals(TokenFormat.V1, realm.getTokenFormat());
+    }
+
+    private static Keyring keyring() {
+        return CookieAuthRealm.compile(new CookieAuthRealmConfig()
+            .setRealName("r")
+            .setCookieName("c")
+            .setEncryptionKey(KEY), null).getKeyring();
+    }
+
+}